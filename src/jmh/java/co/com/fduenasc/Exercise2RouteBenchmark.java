@@ -0,0 +1,25 @@
+package co.com.fduenasc;
+
+import org.apache.camel.RoutesBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.List;
+
+/**
+ * Throughput of the direct:start route of Exercise2Router.
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.args="Exercise2RouteBenchmark -prof gc"
+ */
+public class Exercise2RouteBenchmark extends RouteBenchmarkSupport {
+
+    @Override
+    protected List<RoutesBuilder> routes() {
+        Exercise2Router router = new Exercise2Router();
+        router.routeLog = routeLog();
+        return List.of(router);
+    }
+
+    @Benchmark
+    public void start() {
+        template.sendBody("direct:start", "Mensaje de prueba");
+    }
+}
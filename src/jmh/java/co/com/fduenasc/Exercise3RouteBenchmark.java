@@ -0,0 +1,33 @@
+package co.com.fduenasc;
+
+import org.apache.camel.RoutesBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.List;
+
+/**
+ * Throughput of the direct:uppercase route of Exercise3Router with each uppercase mode.
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.args="Exercise3RouteBenchmark -prof gc"
+ */
+public class Exercise3RouteBenchmark extends RouteBenchmarkSupport {
+
+    private static final String BODY = "Hola Mundo desde Apache Camel - Ejercicio 3";
+
+    @Param({"string", "streaming"})
+    String uppercaseMode;
+
+    @Override
+    protected List<RoutesBuilder> routes() {
+        Exercise3Router router = new Exercise3Router();
+        router.uppercaseMode = uppercaseMode;
+        router.chunkSize = 8192;
+        router.routeLog = routeLog();
+        return List.of(router);
+    }
+
+    @Benchmark
+    public Object uppercase() {
+        return template.requestBody("direct:uppercase", BODY);
+    }
+}
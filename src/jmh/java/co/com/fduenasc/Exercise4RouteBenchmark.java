@@ -0,0 +1,37 @@
+package co.com.fduenasc;
+
+import org.apache.camel.RoutesBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.List;
+
+/**
+ * Throughput of the direct:choice route of Exercise4Router, comparing the choice() branches
+ * with the compiled keyword automaton for messages that reach each branch.
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.args="Exercise4RouteBenchmark -prof gc"
+ */
+public class Exercise4RouteBenchmark extends RouteBenchmarkSupport {
+
+    @Param({"choice", "automaton"})
+    String routingMode;
+
+    @Param({"This is an admin message", "This is a user message", "This is a regular message without keywords"})
+    String message;
+
+    @Override
+    protected List<RoutesBuilder> routes() {
+        Exercise4Router router = new Exercise4Router();
+        router.routingMode = routingMode;
+        router.routingRules = List.of("admin=log:admin?level=INFO&showBody=true", "user=log:user?level=INFO&showBody=true");
+        router.defaultDestination = "log:default?level=INFO&showBody=true";
+        router.routeMetrics = routeMetrics();
+        router.routeLog = routeLog();
+        return List.of(router);
+    }
+
+    @Benchmark
+    public void choice() {
+        template.sendBody("direct:choice", message);
+    }
+}
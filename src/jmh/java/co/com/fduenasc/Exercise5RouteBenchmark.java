@@ -0,0 +1,92 @@
+package co.com.fduenasc;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.camel.RoutesBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Throughput of the direct:dynamic-api route of Exercise5Router with each dispatch mode,
+ * against a stub HTTP server on localhost instead of httpbin.org.
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.args="Exercise5RouteBenchmark -prof gc"
+ */
+public class Exercise5RouteBenchmark extends RouteBenchmarkSupport {
+
+    private static final byte[] STUB_RESPONSE = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"blocking", "async"})
+    String dispatchMode;
+
+    @Param({"false", "true"})
+    boolean cacheEnabled;
+
+    private HttpServer stubServer;
+    private ExecutorService stubExecutor;
+
+    @Override
+    protected List<RoutesBuilder> routes() throws Exception {
+        stubExecutor = Executors.newFixedThreadPool(8);
+        stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stubServer.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, STUB_RESPONSE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(STUB_RESPONSE);
+            }
+        });
+        stubServer.setExecutor(stubExecutor);
+        stubServer.start();
+        String baseUrl = "http://localhost:" + stubServer.getAddress().getPort();
+
+        RouteMetrics routeMetrics = routeMetrics();
+
+        ApiResponseCache cache = new ApiResponseCache();
+        cache.routeMetrics = routeMetrics;
+        cache.enabled = cacheEnabled;
+        cache.ttlMs = 30000;
+        cache.maxEntries = 10000;
+        cache.waitTimeoutMs = 10000;
+        cache.init();
+
+        Exercise5Router router = new Exercise5Router();
+        router.apiAUrl = baseUrl + "/post";
+        router.apiBUrl = baseUrl + "/put";
+        router.dispatchMode = dispatchMode;
+        router.maxPoolSize = 20;
+        router.maxInFlight = 50;
+        router.maxWaitQueueSize = -1;
+        router.connectTimeoutMs = 2000;
+        router.readTimeoutMs = 5000;
+        router.failureRatio = 50;
+        router.requestVolumeThreshold = 20;
+        router.circuitBreakerDelayMs = 5000;
+        router.responseCache = cache;
+        router.routeMetrics = routeMetrics;
+        router.routeLog = routeLog();
+        return List.of(router);
+    }
+
+    @Override
+    protected void afterContextStopped() {
+        stubServer.stop(0);
+        stubExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public Object userRequest() {
+        return template.requestBody("direct:dynamic-api", "user:john.doe@example.com");
+    }
+
+    @Benchmark
+    public Object adminRequest() {
+        return template.requestBody("direct:dynamic-api", "admin:admin@example.com");
+    }
+}
@@ -0,0 +1,52 @@
+package co.com.fduenasc;
+
+import org.apache.camel.RoutesBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.List;
+
+/**
+ * Throughput of the GameOfThronesRouter split + JSON path for the 7 characters, per serialization mode.
+ * The characters are sent to a local direct: endpoint instead of RabbitMQ.
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.args="GameOfThronesRouteBenchmark -prof gc"
+ */
+public class GameOfThronesRouteBenchmark extends RouteBenchmarkSupport {
+
+    private static final String SINK_ENDPOINT = "direct:got-sink";
+
+    @Param({"map", "typed"})
+    String serializationMode;
+
+    @Override
+    protected List<RoutesBuilder> routes() {
+        PayloadCodec payloadCodec = payloadCodec("json", "none");
+        CharacterSerializer serializer = new CharacterSerializer();
+        serializer.cacheSize = 1024;
+        serializer.payloadCodec = payloadCodec;
+        serializer.init();
+
+        GameOfThronesRouter router = new GameOfThronesRouter();
+        router.publisherMode = "single";
+        router.publishEndpoint = SINK_ENDPOINT;
+        router.serializationMode = serializationMode;
+        router.characterSerializer = serializer;
+        router.payloadCodec = payloadCodec;
+        router.routeMetrics = routeMetrics();
+        router.routeLog = routeLog();
+
+        RouteBuilder sink = new RouteBuilder() {
+            @Override
+            public void configure() {
+                from(SINK_ENDPOINT).routeId("got-sink-route").stop();
+            }
+        };
+        return List.of(router, sink);
+    }
+
+    @Benchmark
+    public void publishCharacters() {
+        template.sendBody("direct:got-characters", null);
+    }
+}
@@ -0,0 +1,90 @@
+package co.com.fduenasc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the payload formats of PayloadCodec: encode and decode cost of the 7 Game of Thrones characters,
+ * one message each, and of a large message carrying 1000 characters, where LZ4 and Smile shared strings pay off.
+ * Bytes on the wire per format are printed when each trial starts.
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.args="PayloadFormatBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PayloadFormatBenchmark {
+
+    private static final int LARGE_MESSAGE_CHARACTERS = 1000;
+
+    @Param({"json", "smile", "cbor"})
+    String format;
+
+    @Param({"none", "lz4"})
+    String compression;
+
+    private PayloadCodec payloadCodec;
+    private List<GameOfThronesCharacter> largeMessage;
+    private List<byte[]> characterPayloads;
+    private byte[] largePayload;
+
+    @Setup
+    public void setup() throws Exception {
+        payloadCodec = RouteBenchmarkSupport.payloadCodec(format, compression);
+        largeMessage = new ArrayList<>(LARGE_MESSAGE_CHARACTERS);
+        for (int i = 0; i < LARGE_MESSAGE_CHARACTERS; i++) {
+            largeMessage.add(GameOfThronesRouter.CHARACTERS.get(i % GameOfThronesRouter.CHARACTERS.size()));
+        }
+
+        characterPayloads = new ArrayList<>();
+        int characterBytes = 0;
+        for (GameOfThronesCharacter character : GameOfThronesRouter.CHARACTERS) {
+            byte[] payload = payloadCodec.encode(character);
+            characterPayloads.add(payload);
+            characterBytes += payload.length;
+        }
+        largePayload = payloadCodec.encode(largeMessage);
+        System.out.printf("%n%s/%s: %d bytes for the 7 character messages, %d bytes for a %d character message%n",
+                format, compression, characterBytes, largePayload.length, LARGE_MESSAGE_CHARACTERS);
+    }
+
+    @Benchmark
+    public void encodeCharacters(Blackhole blackhole) throws Exception {
+        for (GameOfThronesCharacter character : GameOfThronesRouter.CHARACTERS) {
+            blackhole.consume(payloadCodec.encode(character));
+        }
+    }
+
+    @Benchmark
+    public void decodeCharacters(Blackhole blackhole) throws Exception {
+        for (byte[] payload : characterPayloads) {
+            blackhole.consume(payloadCodec.decode(payload, GameOfThronesCharacter.class));
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeLargeMessage() throws Exception {
+        return payloadCodec.encode(largeMessage);
+    }
+
+    @Benchmark
+    public Object decodeLargeMessage() throws Exception {
+        return payloadCodec.decode(largePayload, GameOfThronesCharacter[].class);
+    }
+}
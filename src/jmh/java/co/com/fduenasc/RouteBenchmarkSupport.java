@@ -0,0 +1,114 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.config.SmallRyeConfigBuilder;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.RoutesBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.model.RouteDefinition;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Base class of the route benchmarks.
+ * Starts a real CamelContext with the routes under test, outside Quarkus and without any
+ * network or broker, and exposes a ProducerTemplate to send messages to them.
+ * Timer routes are not started, so only the messages sent by the benchmark are measured.
+ * Route logging is turned down to WARNING so the benchmarks measure the routes, not the console.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.util.logging.manager=org.jboss.logmanager.LogManager")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public abstract class RouteBenchmarkSupport {
+
+    protected CamelContext context;
+    protected ProducerTemplate template;
+
+    /**
+     * @return Route builders to add to the context, configured as the benchmark needs them
+     */
+    protected abstract List<RoutesBuilder> routes() throws Exception;
+
+    @Setup(Level.Trial)
+    public void startContext() throws Exception {
+        Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+
+        DefaultCamelContext camelContext = new DefaultCamelContext();
+        for (RoutesBuilder routes : routes()) {
+            camelContext.addRoutes(routes);
+        }
+        // The routers' timer routes send test messages of their own, which would be measured with the benchmark's
+        for (RouteDefinition route : camelContext.getRouteDefinitions()) {
+            if (route.getInput().getEndpointUri().startsWith("timer:")) {
+                route.autoStartup(false);
+            }
+        }
+        context = camelContext;
+        context.start();
+        template = context.createProducerTemplate();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() throws Exception {
+        template.close();
+        context.stop();
+        afterContextStopped();
+    }
+
+    /**
+     * @return RouteMetrics backed by an in-memory registry, so the routes record their metrics as they do in Quarkus
+     */
+    protected static RouteMetrics routeMetrics() {
+        RouteMetrics routeMetrics = new RouteMetrics();
+        routeMetrics.registry = new SimpleMeterRegistry();
+        return routeMetrics;
+    }
+
+    /**
+     * @return RouteLog with the default settings, writing through the jboss LogManager like in Quarkus
+     */
+    protected static RouteLog routeLog() {
+        RouteLog routeLog = new RouteLog();
+        routeLog.queueSize = 8192;
+        routeLog.config = new SmallRyeConfigBuilder().build();
+        routeLog.routeMetrics = routeMetrics();
+        return routeLog;
+    }
+
+    /**
+     * @param format json, smile or cbor
+     * @param compression none or lz4
+     * @return PayloadCodec compressing payloads of 1 KB or more when compression is enabled
+     */
+    protected static PayloadCodec payloadCodec(String format, String compression) {
+        PayloadCodec payloadCodec = new PayloadCodec();
+        payloadCodec.format = format;
+        payloadCodec.compression = compression;
+        payloadCodec.compressionThreshold = 1024;
+        payloadCodec.init();
+        return payloadCodec;
+    }
+
+    /**
+     * Releases anything the benchmark started next to the context, such as a stub server.
+     */
+    protected void afterContextStopped() throws Exception {
+    }
+}
@@ -0,0 +1,94 @@
+package co.com.fduenasc;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the String based UppercaseProcessor with the chunked StreamingUppercaseProcessor
+ * on byte[] bodies of different sizes, with ASCII and non-ASCII text.
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.args="UppercaseProcessorBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UppercaseProcessorBenchmark {
+
+    private static final String ASCII_TEXT = "Hola Mundo desde Apache Camel - Ejercicio 3. ";
+    private static final String UTF8_TEXT = "Canción del año: ñandú, café y acción. ";
+
+    @Param({"1024", "1048576", "8388608"})
+    int bodySize;
+
+    @Param({"ascii", "utf8"})
+    String text;
+
+    private CamelContext context;
+    private byte[] body;
+    private final byte[] sink = new byte[8192];
+
+    private final Exercise3Router.UppercaseProcessor stringProcessor = new Exercise3Router.UppercaseProcessor();
+    private final Exercise3Router.StreamingUppercaseProcessor streamingProcessor = new Exercise3Router.StreamingUppercaseProcessor(8192);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new DefaultCamelContext();
+        context.start();
+
+        byte[] sample = ("ascii".equals(text) ? ASCII_TEXT : UTF8_TEXT).getBytes(StandardCharsets.UTF_8);
+        body = new byte[bodySize];
+        for (int i = 0; i < bodySize; i++) {
+            body[i] = sample[i % sample.length];
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public int stringProcessor() throws Exception {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(body);
+        stringProcessor.process(exchange);
+        return exchange.getIn().getBody(String.class).length();
+    }
+
+    @Benchmark
+    public long streamingProcessor() throws Exception {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(body);
+        streamingProcessor.process(exchange);
+        // Drain the converted stream, the way a producer writing it out would
+        long total = 0;
+        try (InputStream converted = exchange.getIn().getBody(InputStream.class)) {
+            int read;
+            while ((read = converted.read(sink)) > 0) {
+                total += read;
+            }
+        }
+        return total;
+    }
+}
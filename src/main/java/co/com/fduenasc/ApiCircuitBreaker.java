@@ -0,0 +1,172 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import org.apache.camel.Exchange;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Circuit breaker and bulkhead for the calls to one remote API that never block the calling thread.
+ * {@link #acquire(Exchange)} runs before the call and either admits it or marks the exchange as
+ * rejected (circuit open or bulkhead full); {@link #release(Exchange)} runs once the call has
+ * completed, on whatever thread completed it, and records the outcome. Calls that throw and
+ * responses with a 5xx status count as failures.
+ * The circuit opens when at least failureRatio percent of the last requestVolumeThreshold calls
+ * failed, stays open for delayMs, then lets a single trial call through: the circuit closes if it
+ * succeeds and opens again if it fails.
+ */
+final class ApiCircuitBreaker {
+
+    /** Exchange property set to the rejection reason when the call must not be made. */
+    static final String REJECTED = "ApiCircuitBreakerRejected";
+
+    // Exchange property marking an admitted call, true for the trial call of a half open circuit,
+    // so its permit is released exactly once
+    private static final String ADMITTED = "ApiCircuitBreakerAdmitted";
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Semaphore bulkhead;
+    private final int failureRatio;
+    private final long delayNanos;
+    private final Counter rejected;
+
+    // Outcomes of the last calls, true for a failure, guarded by this
+    private final boolean[] outcomes;
+    private int outcomeCount;
+    private int nextOutcome;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedNanos;
+    private boolean trialInFlight;
+
+    /**
+     * @param maxInFlight Calls allowed at the same time
+     * @param requestVolumeThreshold Calls considered when deciding to open the circuit
+     * @param failureRatio Percentage of failed calls that opens the circuit
+     * @param delayMs Time the circuit stays open before a trial call
+     * @param rejected Counter of the calls rejected without calling the API
+     */
+    ApiCircuitBreaker(int maxInFlight, int requestVolumeThreshold, int failureRatio, long delayMs, Counter rejected) {
+        this.bulkhead = new Semaphore(maxInFlight);
+        this.outcomes = new boolean[Math.max(requestVolumeThreshold, 1)];
+        this.failureRatio = failureRatio;
+        this.delayNanos = delayMs * 1_000_000L;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Admits the call or sets {@link #REJECTED} on the exchange.
+     * @param exchange Exchange about to call the API
+     */
+    void acquire(Exchange exchange) {
+        Boolean trial = admit();
+        String reason = trial == null ? "circuit open" : null;
+        if (trial != null && !bulkhead.tryAcquire()) {
+            reason = "bulkhead full";
+            if (trial) {
+                cancelTrial();
+            }
+        }
+        if (reason != null) {
+            rejected.increment();
+            exchange.setProperty(REJECTED, reason);
+            return;
+        }
+        exchange.removeProperty(REJECTED);
+        exchange.setProperty(ADMITTED, trial);
+    }
+
+    /**
+     * Records the outcome of an admitted call and frees its bulkhead permit.
+     * @param exchange Exchange that called the API
+     */
+    void release(Exchange exchange) {
+        Object trial = exchange.removeProperty(ADMITTED);
+        if (trial == null) {
+            return;
+        }
+        bulkhead.release();
+        Integer responseCode = exchange.getIn().getHeader(Exchange.HTTP_RESPONSE_CODE, Integer.class);
+        boolean failed = exchange.getException() != null
+                || responseCode == null
+                || responseCode >= 500;
+        record(failed, Boolean.TRUE.equals(trial));
+    }
+
+    /**
+     * @return true while calls are being rejected because the circuit is open
+     */
+    synchronized boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    /**
+     * @return null when the circuit rejects the call, true when it is the trial call of a half open circuit
+     */
+    private synchronized Boolean admit() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedNanos < delayNanos) {
+                return null;
+            }
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return null;
+            }
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void cancelTrial() {
+        trialInFlight = false;
+    }
+
+    /**
+     * Records the outcome of a call.
+     * @param failed true when the call failed
+     * @param trial true for the trial call of a half open circuit
+     */
+    synchronized void record(boolean failed, boolean trial) {
+        if (trial) {
+            trialInFlight = false;
+            if (failed) {
+                open();
+            } else {
+                reset();
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            // A call admitted before the circuit opened
+            return;
+        }
+        if (outcomeCount == outcomes.length && outcomes[nextOutcome]) {
+            failures--;
+        }
+        outcomes[nextOutcome] = failed;
+        if (failed) {
+            failures++;
+        }
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+        outcomeCount = Math.min(outcomeCount + 1, outcomes.length);
+        if (outcomeCount == outcomes.length && failures * 100L >= (long) failureRatio * outcomes.length) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedNanos = System.nanoTime();
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        outcomeCount = 0;
+        nextOutcome = 0;
+        failures = 0;
+    }
+}
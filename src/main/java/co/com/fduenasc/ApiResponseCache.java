@@ -0,0 +1,177 @@
+package co.com.fduenasc;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.support.AsyncCallbackToCompletableFutureAdapter;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ApiResponseCache keeps the responses of the Exercise 5 remote APIs, keyed on user type and payload.
+ * Entries expire after a TTL and the cache is bounded in size (Caffeine's W-TinyLFU eviction).
+ * Concurrent requests for the same key share a single upstream call: the first one calls the API
+ * and the others continue once its response arrives, without holding a thread while they wait.
+ * Only successful (2xx) responses are kept; failed calls, including those handled by the
+ * HttpOperationFailedException handler, are never cached.
+ * As a processor it runs the lookup, {@link #store(Exchange)} runs after the call.
+ */
+@ApplicationScoped
+public class ApiResponseCache implements AsyncProcessor {
+
+    private static final Logger LOGGER = Logger.getLogger(ApiResponseCache.class);
+
+    /** Exchange property set to true when the response was served from the cache. */
+    public static final String CACHE_HIT = "ApiResponseCacheHit";
+
+    private static final String PENDING_RESPONSE = "ApiResponseCachePending";
+    private static final String USER_TYPE_HEADER = "User-Type";
+
+    @ConfigProperty(name = "exercise5.cache.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "exercise5.cache.ttl-ms", defaultValue = "30000")
+    long ttlMs;
+
+    @ConfigProperty(name = "exercise5.cache.max-entries", defaultValue = "10000")
+    long maxEntries;
+
+    // How long a request waits for an identical call already in flight before calling the API itself
+    @ConfigProperty(name = "exercise5.cache.wait-timeout-ms", defaultValue = "10000")
+    long waitTimeoutMs;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    private AsyncCache<String, CachedResponse> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(routeMetrics.registry(), cache.synchronous(), "exercise5-responses");
+    }
+
+    @PreDestroy
+    void logStats() {
+        if (enabled) {
+            LOGGER.info("API response cache statistics: " + stats());
+        }
+    }
+
+    /**
+     * Looks up the response for the exchange before the API is called.
+     * On a hit the body and response code are replaced and {@link #CACHE_HIT} is set to true.
+     * On a miss the exchange becomes responsible for the entry until {@link #store(Exchange)} runs.
+     * When an identical call is in flight the exchange continues once that call completes.
+     * @param exchange Exchange about to call the API
+     * @param callback Called once the lookup is done
+     * @return true when the lookup completed synchronously
+     */
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        exchange.setProperty(CACHE_HIT, false);
+        if (!enabled) {
+            callback.done(true);
+            return true;
+        }
+
+        String key = exchange.getIn().getHeader(USER_TYPE_HEADER, String.class) + ':' + exchange.getIn().getBody(String.class);
+        CompletableFuture<CachedResponse> pending = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> response = cache.get(key, (ignored, executor) -> pending);
+
+        if (response == pending) {
+            // Miss: this exchange calls the API. If it ends without a cacheable response the entry
+            // is failed, which removes it from the cache and releases the waiting requests
+            exchange.setProperty(PENDING_RESPONSE, pending);
+            exchange.getExchangeExtension().addOnCompletion(new SynchronizationAdapter() {
+                @Override
+                public void onDone(Exchange completed) {
+                    pending.completeExceptionally(new IllegalStateException("Response for " + key + " is not cacheable"));
+                }
+            });
+            callback.done(true);
+            return true;
+        }
+
+        // The timeout applies to a copy, so it never fails the entry shared with the other requests
+        response.copy().orTimeout(waitTimeoutMs, TimeUnit.MILLISECONDS).whenComplete((cached, error) -> {
+            if (error == null) {
+                exchange.getIn().setBody(cached.body());
+                exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, cached.responseCode());
+                exchange.setProperty(CACHE_HIT, true);
+            } else {
+                // The call we waited for failed or is too slow, so this exchange calls the API on its own
+                LOGGER.debugf("No cached response for %s, calling the API: %s", key, error.getMessage());
+            }
+            callback.done(false);
+        });
+        return false;
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        try {
+            processAsync(exchange).get();
+        } catch (ExecutionException e) {
+            exchange.setException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Exchange> processAsync(Exchange exchange) {
+        AsyncCallbackToCompletableFutureAdapter<Exchange> callback = new AsyncCallbackToCompletableFutureAdapter<>(exchange);
+        process(exchange, callback);
+        return callback.getFuture();
+    }
+
+    /**
+     * Stores the API response when the exchange is the one that missed the cache and the call succeeded.
+     * @param exchange Exchange that called the API
+     */
+    public void store(Exchange exchange) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<CachedResponse> pending = exchange.getProperty(PENDING_RESPONSE, CompletableFuture.class);
+        if (pending == null) {
+            return;
+        }
+        exchange.removeProperty(PENDING_RESPONSE);
+
+        Integer responseCode = exchange.getIn().getHeader(Exchange.HTTP_RESPONSE_CODE, Integer.class);
+        if (exchange.getException() != null || responseCode == null || responseCode < 200 || responseCode >= 300) {
+            pending.completeExceptionally(new IllegalStateException("Response with status " + responseCode + " is not cacheable"));
+            return;
+        }
+        // Read the response once so the same text is cached and passed on
+        String body = exchange.getIn().getBody(String.class);
+        exchange.getIn().setBody(body);
+        pending.complete(new CachedResponse(body, responseCode));
+    }
+
+    /**
+     * @return Hit, miss and eviction counters of the cache
+     */
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    private record CachedResponse(String body, int responseCode) {
+    }
+}
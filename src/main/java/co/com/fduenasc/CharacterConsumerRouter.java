@@ -0,0 +1,275 @@
+package co.com.fduenasc;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.smallrye.common.annotation.Identifier;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.springrabbit.DefaultListenerContainerFactory;
+import org.apache.camel.component.springrabbit.SpringRabbitMQComponent;
+import org.apache.camel.component.springrabbit.SpringRabbitMQEndpoint;
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.support.ExpressionAdapter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CharacterConsumerRouter is a class that configures an Apache Camel route
+ * to consume the Game of Thrones characters from character-queue.
+ * Runs several concurrent consumers with a configurable prefetch, acknowledges messages
+ * in batches and periodically logs the drain rate and the number of messages waiting in the queue.
+ * Optionally skips characters that were already consumed, keyed on configurable payload fields
+ * and tracked in an off-heap {@link DeduplicationIndex}.
+ */
+@ApplicationScoped
+public class CharacterConsumerRouter extends RouteBuilder {
+
+    private static final Logger LOGGER = Logger.getLogger(CharacterConsumerRouter.class);
+
+    // spring-rabbitmq component with the batch acknowledging listener containers
+    private static final String COMPONENT_NAME = "character-consumer-rabbitmq";
+
+    @ConfigProperty(name = "got.consumer.enabled", defaultValue = "false")
+    boolean enabled;
+
+    // 0 means one consumer per available core
+    @ConfigProperty(name = "got.consumer.concurrent-consumers", defaultValue = "0")
+    int concurrentConsumers;
+
+    @ConfigProperty(name = "got.consumer.prefetch-count", defaultValue = "250")
+    int prefetchCount;
+
+    // Messages are acknowledged every ack-batch-size messages, or after ack-interval-ms without new messages
+    @ConfigProperty(name = "got.consumer.ack-batch-size", defaultValue = "100")
+    int ackBatchSize;
+
+    @ConfigProperty(name = "got.consumer.ack-interval-ms", defaultValue = "100")
+    long ackIntervalMs;
+
+    @ConfigProperty(name = "got.consumer.virtual-threads", defaultValue = "false")
+    boolean virtualThreads;
+
+    @ConfigProperty(name = "got.consumer.report-interval-ms", defaultValue = "10000")
+    long reportIntervalMs;
+
+    // Skips messages whose key fields were already seen within the window
+    @ConfigProperty(name = "got.consumer.idempotency.enabled", defaultValue = "false")
+    boolean idempotencyEnabled;
+
+    @ConfigProperty(name = "got.consumer.idempotency.key-fields", defaultValue = "name,house")
+    List<String> keyFields;
+
+    // Keys are remembered for at least one window, or until a generation holds max-keys keys
+    @ConfigProperty(name = "got.consumer.idempotency.window-ms", defaultValue = "86400000")
+    long idempotencyWindowMs;
+
+    @ConfigProperty(name = "got.consumer.idempotency.max-keys", defaultValue = "1000000")
+    long idempotencyMaxKeys;
+
+    // File the index is mapped to so it survives restarts; kept in memory only when not set
+    @ConfigProperty(name = "got.consumer.idempotency.snapshot")
+    Optional<String> idempotencySnapshot;
+
+    @Inject
+    @Identifier("consumer")
+    ConnectionFactory connectionFactory;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    @Inject
+    PayloadCodec payloadCodec;
+
+    private final LongAdder consumed = new LongAdder();
+    private HashedIdempotentRepository repository;
+
+    // Only touched by the stats timer thread
+    private long lastReportedCount;
+    private long lastReportNanos = System.nanoTime();
+
+    @Override
+    public void configure() throws Exception {
+        int consumers = concurrentConsumers > 0 ? concurrentConsumers : Runtime.getRuntime().availableProcessors();
+
+        // Route that consumes the characters published by GameOfThronesRouter
+        // The exchange, queue and binding are declared by RabbitMQTopology
+        // The component is produced by characterConsumerComponent()
+        RouteDefinition route = from(COMPONENT_NAME + ":" + RabbitMQConfiguration.EXCHANGE_NAME
+                + "?queues=" + RabbitMQConfiguration.QUEUE_NAME
+                + "&routingKey=" + RabbitMQConfiguration.ROUTING_KEY
+                + "&connectionFactory=#consumerConnectionFactory"
+                + "&autoDeclare=false"
+                + "&messageListenerContainerType=SMLC"
+                + "&concurrentConsumers=" + consumers
+                + "&maxConcurrentConsumers=" + consumers
+                + "&prefetchCount=" + prefetchCount)
+                .routeId("character-consumer-route")
+                .autoStartup(enabled);
+
+        // Payloads are decoded whatever format they were published in, see PayloadCodec
+        Processor decode = payloadCodec.decoder(GameOfThronesCharacter.class);
+        Processor consume = exchange -> {
+            decode.process(exchange);
+            consumed.increment();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Received character: " + exchange.getIn().getBody());
+            }
+        };
+        if (idempotencyEnabled) {
+            // The key is added before the message is processed and removed again if processing fails
+            route.idempotentConsumer(new ExpressionAdapter() {
+                        @Override
+                        public Object evaluate(Exchange exchange) {
+                            return characterKey(exchange);
+                        }
+                    }, createIdempotentRepository())
+                    .skipDuplicate(true)
+                    .process(consume);
+        } else {
+            route.process(consume);
+        }
+
+        // Route that reports the throughput and the lag of the consumer
+        from("timer:character-consumer-stats?delay=" + reportIntervalMs + "&period=" + reportIntervalMs)
+                .routeId("character-consumer-stats-route")
+                .autoStartup(enabled)
+                .process(exchange -> reportStats());
+    }
+
+    /**
+     * Produces the spring-rabbitmq component used only by the consumer route. Batch acknowledgements
+     * and the optional virtual thread executor are set on its listener containers, so other
+     * spring-rabbitmq endpoints keep the defaults.
+     * @return The component, found by Camel under {@link #COMPONENT_NAME}
+     */
+    @Produces
+    @ApplicationScoped
+    @Named(COMPONENT_NAME)
+    SpringRabbitMQComponent characterConsumerComponent() {
+        SpringRabbitMQComponent component = new SpringRabbitMQComponent();
+        component.setListenerContainerFactory(new BatchAckListenerContainerFactory());
+        return component;
+    }
+
+    private HashedIdempotentRepository createIdempotentRepository() {
+        // The index is only allocated once the route starts, see HashedIdempotentRepository
+        repository = new HashedIdempotentRepository(idempotencyMaxKeys, idempotencyWindowMs,
+                idempotencySnapshot.map(Path::of).orElse(null),
+                Counter.builder("got.consumer.duplicates").register(routeMetrics.registry()));
+        Gauge.builder("got.consumer.idempotency.keys", repository, HashedIdempotentRepository::size)
+                .register(routeMetrics.registry());
+        LOGGER.info("Idempotent consumer keyed on " + keyFields);
+        return repository;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Releases the off-heap index, which stopping the route leaves in place
+        if (repository != null) {
+            repository.shutdown();
+        }
+    }
+
+    /**
+     * Reads the key fields from the top level of the body without building a tree,
+     * in any of the {@link PayloadCodec} formats.
+     * Bodies that are not objects, or that miss a key field, are keyed on their whole content,
+     * so they are only skipped when the very same payload was consumed before.
+     * @param exchange Consumed exchange
+     * @return The key field values joined with '|'
+     */
+    String characterKey(Exchange exchange) {
+        byte[] body = exchange.getIn().getBody(byte[].class);
+        String[] values = new String[keyFields.size()];
+        try (JsonParser parser = payloadCodec.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return wholeBodyKey(body);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                int position = keyFields.indexOf(parser.currentName());
+                JsonToken value = parser.nextToken();
+                if (position >= 0 && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                    values[position] = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeCamelException("Could not read the idempotency key of the message", e);
+        }
+        for (String value : values) {
+            if (value == null) {
+                // Joining would give every such message the same key and drop all but the first
+                LOGGER.debug("Message without the key fields " + keyFields + ", keyed on its whole body");
+                return wholeBodyKey(body);
+            }
+        }
+        return String.join("|", values);
+    }
+
+    // Latin-1 maps every byte to one char, so different payloads never share a key before hashing
+    private static String wholeBodyKey(byte[] body) {
+        return "body:" + new String(body, StandardCharsets.ISO_8859_1);
+    }
+
+    private void reportStats() {
+        long now = System.nanoTime();
+        long total = consumed.sum();
+        double rate = (total - lastReportedCount) * 1_000_000_000.0 / (now - lastReportNanos);
+        lastReportedCount = total;
+        lastReportNanos = now;
+
+        String lag;
+        try {
+            Properties queue = new RabbitAdmin(connectionFactory).getQueueProperties(RabbitMQConfiguration.QUEUE_NAME);
+            lag = queue == null ? "unknown" : String.valueOf(queue.get(RabbitAdmin.QUEUE_MESSAGE_COUNT));
+        } catch (AmqpException e) {
+            lag = "unknown";
+        }
+        LOGGER.info(String.format("Character consumer: %.1f msg/s, %d consumed in total, %s messages waiting in %s",
+                rate, total, lag, RabbitMQConfiguration.QUEUE_NAME));
+    }
+
+    /**
+     * Listener container factory that acknowledges messages in batches
+     * and optionally runs the consumers on virtual threads.
+     */
+    private class BatchAckListenerContainerFactory extends DefaultListenerContainerFactory {
+
+        @Override
+        public AbstractMessageListenerContainer createListenerContainer(SpringRabbitMQEndpoint endpoint) {
+            AbstractMessageListenerContainer container = super.createListenerContainer(endpoint);
+            if (container instanceof SimpleMessageListenerContainer simpleContainer) {
+                simpleContainer.setBatchSize(ackBatchSize);
+                simpleContainer.setReceiveTimeout(ackIntervalMs);
+            }
+            if (virtualThreads) {
+                container.setTaskExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            }
+            return container;
+        }
+    }
+}
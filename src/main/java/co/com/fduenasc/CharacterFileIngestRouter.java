@@ -0,0 +1,355 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CharacterFileIngestRouter is a class that configures Apache Camel routes to publish
+ * character datasets dropped as NDJSON or CSV files into got.file-ingest.directory.
+ * Files are read line by line with a streaming split, so they are never loaded whole. Each record
+ * is parsed and handed to one of several lanes, picked by the hash of its ordering key; every lane
+ * is a bounded seda queue with a single consumer that encodes and publishes its records, so records
+ * with the same key are published in file order while the lanes run in parallel. When the lanes are
+ * full the reader waits, which keeps memory use independent of the file size.
+ * A file is only moved to .done once every record read from it has been published. It is moved to
+ * .failed when some records could not be published or the application stopped first; moving it back
+ * publishes all of its records again, so delivery is at least once.
+ * Progress and the records per second of every file are logged periodically.
+ */
+@ApplicationScoped
+public class CharacterFileIngestRouter extends RouteBuilder {
+
+    private static final Logger LOGGER = Logger.getLogger(CharacterFileIngestRouter.class);
+
+    private static final String ROUTE_ID = "got-file-ingest-route";
+    private static final String LANE_ENDPOINT = "seda:got-file-lane-";
+    // Header holding the lane a record is published by, not set for skipped lines
+    private static final String LANE_HEADER = "GotFileLane";
+    // Exchange property holding the FileProgress of the file a record comes from
+    private static final String PROGRESS_PROPERTY = "GotFileProgress";
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String CSV_HEADER = "name,";
+
+    // Ordering keys
+    private static final String ORDERING_KEY_NAME = "name";
+    private static final String ORDERING_KEY_HOUSE = "house";
+    private static final String ORDERING_KEY_NONE = "none";
+    private static final Set<String> ORDERING_KEYS = Set.of(ORDERING_KEY_NAME, ORDERING_KEY_HOUSE, ORDERING_KEY_NONE);
+
+    @ConfigProperty(name = "got.file-ingest.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "got.file-ingest.directory", defaultValue = "data/inbox")
+    String directory;
+
+    // 0 uses one lane per available core
+    @ConfigProperty(name = "got.file-ingest.lanes", defaultValue = "0")
+    int lanes;
+
+    // Records waiting in each lane before the reader blocks
+    @ConfigProperty(name = "got.file-ingest.lane-queue-size", defaultValue = "1000")
+    int laneQueueSize;
+
+    // Records with the same value of this field are published in file order: name, house or none
+    @ConfigProperty(name = "got.file-ingest.ordering-key", defaultValue = "name")
+    String orderingKey;
+
+    @ConfigProperty(name = "got.file-ingest.endpoint", defaultValue = "spring-rabbitmq:got-exchange?routingKey=character")
+    String publishEndpoint;
+
+    @ConfigProperty(name = "got.file-ingest.report-interval-ms", defaultValue = "5000")
+    long reportIntervalMs;
+
+    @Inject
+    PayloadCodec payloadCodec;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    // Files being read or published, by file name, for the progress reports
+    private final Map<String, FileProgress> files = new ConcurrentHashMap<>();
+    private final AtomicLong roundRobin = new AtomicLong();
+
+    private Counter readRecords;
+    private Counter publishedRecords;
+    private Counter failedRecords;
+    private Counter skippedLines;
+
+    @Override
+    public void configure() {
+        if (!ORDERING_KEYS.contains(orderingKey)) {
+            throw new IllegalArgumentException("Unknown got.file-ingest.ordering-key '" + orderingKey
+                    + "', expected one of " + ORDERING_KEYS);
+        }
+        int laneCount = lanes > 0 ? lanes : Runtime.getRuntime().availableProcessors();
+        readRecords = recordCounter("read");
+        publishedRecords = recordCounter("published");
+        failedRecords = recordCounter("failed");
+        skippedLines = recordCounter("skipped");
+
+        // One file at a time, moved to .done once every record has been published
+        from("file:" + directory + "?include=.*\\.(ndjson|jsonl|csv)&move=.done&moveFailed=.failed"
+                + "&readLock=changed&maxMessagesPerPoll=1")
+                .routeId(ROUTE_ID)
+                .autoStartup(enabled)
+                .process(this::startFile)
+                .split(body().tokenize("\n")).streaming()
+                    .process(exchange -> parseRecord(exchange, laneCount))
+                    .filter(header(LANE_HEADER).isNotNull())
+                        .toD(LANE_ENDPOINT + "${header." + LANE_HEADER + "}?size=" + laneQueueSize + "&blockWhenFull=true")
+                    .end()
+                .end()
+                .process(this::finishReading);
+
+        for (int lane = 0; lane < laneCount; lane++) {
+            from(LANE_ENDPOINT + lane + "?size=" + laneQueueSize)
+                    .routeId("got-file-lane-" + lane)
+                    .autoStartup(enabled)
+                    .doTry()
+                        .process(payloadCodec)
+                        .to(publishEndpoint)
+                        .process(exchange -> {
+                            publishedRecords.increment();
+                            progress(exchange).recordDone(true);
+                        })
+                    .doCatch(Exception.class)
+                        .process(exchange -> {
+                            failedRecords.increment();
+                            progress(exchange).recordDone(false);
+                            LOGGER.debugf("Could not publish a record of %s: %s", progress(exchange).name,
+                                    exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class).getMessage());
+                        })
+                    .end();
+        }
+
+        // Route that reports the progress of the files being ingested
+        from("timer:got-file-ingest-progress?delay=" + reportIntervalMs + "&period=" + reportIntervalMs)
+                .routeId("got-file-ingest-progress-route")
+                .autoStartup(enabled)
+                .process(exchange -> reportProgress());
+    }
+
+    private void startFile(Exchange exchange) {
+        String name = fileName(exchange);
+        long length = exchange.getIn().getHeader(Exchange.FILE_LENGTH, 0L, Long.class);
+        FileProgress progress = new FileProgress(name, length, name.toLowerCase(Locale.ROOT).endsWith(CSV_EXTENSION));
+        // Copied to every record of the file, through the split and the lanes
+        exchange.setProperty(PROGRESS_PROPERTY, progress);
+        files.put(name, progress);
+        // The file is no longer reported once it is moved, whether it was ingested or not
+        exchange.getExchangeExtension().addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange completed) {
+                files.remove(name, progress);
+            }
+        });
+        LOGGER.info("Ingesting " + name + " (" + length + " bytes)");
+    }
+
+    /**
+     * Waits until every record read from the file has been published or has failed, so the file
+     * is only moved once its records are out. Runs on the file consumer thread, which reads one file at a time.
+     */
+    private void finishReading(Exchange exchange) throws Exception {
+        FileProgress progress = progress(exchange);
+        LOGGER.info(String.format("Read %d records from %s in %.1f s, publishing the rest",
+                progress.read.sum(), progress.name, progress.elapsedSeconds()));
+        progress.readDone();
+        while (true) {
+            try {
+                progress.published.get(reportIntervalMs, TimeUnit.MILLISECONDS);
+                break;
+            } catch (TimeoutException e) {
+                if (!isRouteStarted()) {
+                    throw new IllegalStateException("Stopped before every record of " + progress.name + " was published");
+                }
+            }
+        }
+
+        long published = progress.publishedRecords.sum();
+        long failed = progress.failedRecords.sum();
+        LOGGER.info(String.format("Ingested %s: %d records published, %d failed in %.1f s (%.1f records/s)",
+                progress.name, published, failed, progress.elapsedSeconds(), published / progress.elapsedSeconds()));
+        if (failed > 0) {
+            // Moves the file to .failed
+            throw new IllegalStateException(failed + " records of " + progress.name + " could not be published");
+        }
+    }
+
+    private boolean isRouteStarted() {
+        return getContext().getRouteController().getRouteStatus(ROUTE_ID).isStarted();
+    }
+
+    /**
+     * Parses a line into a character and picks its lane. Blank lines, the CSV header and
+     * lines that cannot be parsed are left without a lane, so they are not published.
+     */
+    private void parseRecord(Exchange exchange, int laneCount) {
+        FileProgress progress = progress(exchange);
+        String line = exchange.getIn().getBody(String.class);
+        // Only an approximation of the bytes read, used for the progress percentage
+        progress.readBytes.add(line.length() + 1L);
+        line = line.strip();
+        if (line.isEmpty() || (progress.csv && line.startsWith(CSV_HEADER))) {
+            return;
+        }
+
+        GameOfThronesCharacter character;
+        try {
+            character = progress.csv ? parseCsv(line) : payloadCodec.decode(line.getBytes(StandardCharsets.UTF_8), GameOfThronesCharacter.class);
+        } catch (Exception e) {
+            skippedLines.increment();
+            LOGGER.debugf("Skipped a line of %s that is not a character: %s", progress.name, e.getMessage());
+            return;
+        }
+        progress.read.increment();
+        readRecords.increment();
+        exchange.getIn().setBody(character);
+        exchange.getIn().setHeader(LANE_HEADER, lane(character, laneCount));
+    }
+
+    private int lane(GameOfThronesCharacter character, int laneCount) {
+        String key = switch (orderingKey) {
+            case ORDERING_KEY_NAME -> character.name();
+            case ORDERING_KEY_HOUSE -> character.house();
+            // none
+            default -> null;
+        };
+        if (key == null) {
+            // No ordering needed, records are spread evenly
+            return (int) Math.floorMod(roundRobin.getAndIncrement(), (long) laneCount);
+        }
+        return Math.floorMod(key.hashCode(), laneCount);
+    }
+
+    /**
+     * Parses a CSV line with the columns name, house, title, description and status.
+     * Fields may be quoted, with "" for a quote inside them; quoted line breaks are not supported.
+     */
+    static GameOfThronesCharacter parseCsv(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        if (fields.size() != 5) {
+            throw new IllegalArgumentException("Expected 5 columns but got " + fields.size());
+        }
+        return new GameOfThronesCharacter(fields.get(0), fields.get(1), fields.get(2), fields.get(3), fields.get(4));
+    }
+
+    private void reportProgress() {
+        for (FileProgress progress : files.values()) {
+            long read = progress.read.sum();
+            long published = progress.publishedRecords.sum();
+            long failed = progress.failedRecords.sum();
+            long now = System.nanoTime();
+            double rate = (published - progress.lastPublished) * 1_000_000_000.0 / (now - progress.lastReportNanos);
+            progress.lastPublished = published;
+            progress.lastReportNanos = now;
+
+            double percent = progress.length == 0 ? 0 : Math.min(100.0, progress.readBytes.sum() * 100.0 / progress.length);
+            LOGGER.info(String.format("Ingesting %s: %.1f%% read, %d records read, %d published, %d failed, %.1f records/s",
+                    progress.name, percent, read, published, failed, rate));
+        }
+    }
+
+    private static FileProgress progress(Exchange exchange) {
+        return exchange.getProperty(PROGRESS_PROPERTY, FileProgress.class);
+    }
+
+    private static String fileName(Exchange exchange) {
+        return exchange.getIn().getHeader(Exchange.FILE_NAME, String.class);
+    }
+
+    private Counter recordCounter(String outcome) {
+        return Counter.builder("got.file.records").tag("outcome", outcome).register(routeMetrics.registry());
+    }
+
+    /**
+     * Counts of a file being ingested.
+     */
+    private static final class FileProgress {
+
+        private final String name;
+        private final long length;
+        private final boolean csv;
+        private final long startNanos = System.nanoTime();
+        private final LongAdder readBytes = new LongAdder();
+        private final LongAdder read = new LongAdder();
+        private final LongAdder publishedRecords = new LongAdder();
+        private final LongAdder failedRecords = new LongAdder();
+        // Completed once the file has been read and every record read has been published or has failed
+        private final CompletableFuture<Void> published = new CompletableFuture<>();
+        private volatile boolean readDone;
+
+        // Only touched by the progress timer thread
+        private long lastPublished;
+        private long lastReportNanos = startNanos;
+
+        private FileProgress(String name, long length, boolean csv) {
+            this.name = name;
+            this.length = length;
+            this.csv = csv;
+        }
+
+        private void recordDone(boolean success) {
+            (success ? publishedRecords : failedRecords).increment();
+            completeIfDone();
+        }
+
+        private void readDone() {
+            readDone = true;
+            completeIfDone();
+        }
+
+        private void completeIfDone() {
+            // read no longer changes once readDone is set
+            if (readDone && publishedRecords.sum() + failedRecords.sum() >= read.sum()) {
+                published.complete(null);
+            }
+        }
+
+        private double elapsedSeconds() {
+            return Math.max(System.nanoTime() - startNanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package co.com.fduenasc;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CharacterSerializer is a Processor that turns typed characters into payloads in the {@link PayloadCodec} format.
+ * It uses a writer built once for {@link GameOfThronesCharacter}, writes into a per-thread
+ * reusable buffer and keeps the bytes of already seen characters, so republishing an
+ * unchanged character does not serialize it again.
+ */
+@ApplicationScoped
+public class CharacterSerializer implements Processor {
+
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    // Maximum number of payloads kept in the cache; new characters are still serialized once the limit is hit
+    @ConfigProperty(name = "got.serialization.cache-size", defaultValue = "1024")
+    int cacheSize;
+
+    @Inject
+    PayloadCodec payloadCodec;
+
+    private ObjectWriter writer;
+    private final Map<GameOfThronesCharacter, byte[]> cache = new ConcurrentHashMap<>();
+    private final ThreadLocal<ByteArrayOutputStream> buffers =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+
+    @PostConstruct
+    void init() {
+        writer = payloadCodec.mapper().writerFor(GameOfThronesCharacter.class);
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        Object body = exchange.getIn().getBody();
+        if (body instanceof GameOfThronesCharacter character) {
+            byte[] payload = serialize(character);
+            exchange.getIn().setBody(payload);
+            // Same headers as PayloadCodec sets, including the compression header when the payload was compressed
+            payloadCodec.setHeaders(exchange, payload);
+            return;
+        }
+        if (body instanceof Collection<?> characters) {
+            exchange.getIn().setBody(serializeAll(characters));
+        } else if (body instanceof Object[] characters) {
+            exchange.getIn().setBody(serializeAll(Arrays.asList(characters)));
+        } else {
+            throw new IllegalArgumentException("Expected a GameOfThronesCharacter body but got: "
+                    + (body == null ? "null" : body.getClass().getName()));
+        }
+        // Each payload of a list is described when it is published, see PayloadCodec#messageProperties
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, payloadCodec.contentType());
+    }
+
+    /**
+     * Serializes a character, compressing it when the codec is set to.
+     * The returned array may be shared with other callers and must not be modified.
+     * @param character Character to serialize
+     * @return Payload bytes
+     */
+    public byte[] serialize(GameOfThronesCharacter character) throws IOException {
+        byte[] cached = cache.get(character);
+        if (cached != null) {
+            return cached;
+        }
+
+        ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        writer.writeValue(buffer, character);
+        byte[] bytes = payloadCodec.compress(buffer.toByteArray());
+
+        if (cache.size() < cacheSize) {
+            cache.putIfAbsent(character, bytes);
+        }
+        return bytes;
+    }
+
+    private List<byte[]> serializeAll(Collection<?> characters) throws IOException {
+        List<byte[]> payloads = new ArrayList<>(characters.size());
+        for (Object character : characters) {
+            payloads.add(serialize((GameOfThronesCharacter) character));
+        }
+        return payloads;
+    }
+}
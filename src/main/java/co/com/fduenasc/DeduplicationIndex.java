@@ -0,0 +1,274 @@
+package co.com.fduenasc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Set of 64-bit key hashes stored outside the heap, used to detect messages that were already processed.
+ * Hashes live in two open-addressing tables of longs (linear probing, at most half full): new hashes go
+ * to the current generation and lookups check both. When the current generation is older than the window
+ * or holds the maximum number of keys, the previous one is cleared and becomes current, so a key is
+ * remembered for at least one window and memory use never grows. Each table has 2 * maxKeys slots
+ * rounded up to a power of two, so the two tables take between 32 and 64 bytes per key of maxKeys.
+ * The tables are direct buffers, or a memory-mapped file when a snapshot path is given, in which case
+ * the index is still there after a restart.
+ * All methods are thread safe.
+ */
+final class DeduplicationIndex implements Closeable {
+
+    private static final long MAGIC = 0x4465647570496478L;
+    private static final int HEADER_SIZE = 64;
+    // Offsets of the header fields
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int CURRENT_OFFSET = 16;
+    private static final int COUNT_OFFSET = 24;
+    private static final int STARTED_OFFSET = 40;
+
+    // Largest table a single buffer can hold
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final long EMPTY = 0L;
+    private static final byte[] ZEROS = new byte[64 * 1024];
+
+    private final long windowMillis;
+    private final long maxKeys;
+    private final int capacity;
+    private final int mask;
+
+    private final FileChannel channel;
+    private final ByteBuffer header;
+    private final ByteBuffer[] tables = new ByteBuffer[2];
+
+    /**
+     * @param maxKeys Keys held by a generation before it is rotated
+     * @param windowMillis Age of a generation before it is rotated
+     * @param snapshot File the index is mapped to, or null to keep it in memory only
+     */
+    DeduplicationIndex(long maxKeys, long windowMillis, Path snapshot) throws IOException {
+        this.maxKeys = Math.max(maxKeys, 1);
+        this.windowMillis = windowMillis;
+        long slots = Long.highestOneBit(Math.max(this.maxKeys * 2 - 1, 1)) << 1;
+        if (slots > MAX_CAPACITY) {
+            throw new IllegalArgumentException("At most " + MAX_CAPACITY / 2 + " keys per generation are supported");
+        }
+        this.capacity = (int) slots;
+        this.mask = capacity - 1;
+        long tableSize = (long) capacity * Long.BYTES;
+
+        if (snapshot == null) {
+            channel = null;
+            header = ByteBuffer.allocateDirect(HEADER_SIZE);
+            tables[0] = ByteBuffer.allocateDirect((int) tableSize);
+            tables[1] = ByteBuffer.allocateDirect((int) tableSize);
+            reset();
+            return;
+        }
+
+        if (snapshot.getParent() != null) {
+            Files.createDirectories(snapshot.getParent());
+        }
+        channel = FileChannel.open(snapshot, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        tables[0] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, tableSize);
+        tables[1] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + tableSize, tableSize);
+        // A snapshot written with another size cannot be read back
+        if (header.getLong(MAGIC_OFFSET) != MAGIC || header.getLong(CAPACITY_OFFSET) != capacity) {
+            reset();
+        }
+    }
+
+    /**
+     * Adds a hash unless it is already in the index.
+     * @param hash Key hash
+     * @return true when the hash was added, false when it was already there
+     */
+    synchronized boolean add(long hash) {
+        long key = normalize(hash);
+        rotateIfNeeded();
+        int current = current();
+        if (find(tables[current], key) >= 0 || find(tables[1 - current], key) >= 0) {
+            return false;
+        }
+        ByteBuffer table = tables[current];
+        int slot = slot(key);
+        while (table.getLong(slot * Long.BYTES) != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table.putLong(slot * Long.BYTES, key);
+        setCount(current, count(current) + 1);
+        return true;
+    }
+
+    /**
+     * @param hash Key hash
+     * @return true when the hash is in the index
+     */
+    synchronized boolean contains(long hash) {
+        long key = normalize(hash);
+        return find(tables[0], key) >= 0 || find(tables[1], key) >= 0;
+    }
+
+    /**
+     * Removes a hash, so the key is accepted again.
+     * @param hash Key hash
+     * @return true when the hash was in the index
+     */
+    synchronized boolean remove(long hash) {
+        long key = normalize(hash);
+        for (int generation = 0; generation < 2; generation++) {
+            int slot = find(tables[generation], key);
+            if (slot >= 0) {
+                delete(tables[generation], slot);
+                setCount(generation, count(generation) - 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Keys held in both generations
+     */
+    synchronized long size() {
+        return count(0) + count(1);
+    }
+
+    /**
+     * Removes every key.
+     */
+    synchronized void clear() {
+        reset();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            ((MappedByteBuffer) header).force();
+            ((MappedByteBuffer) tables[0]).force();
+            ((MappedByteBuffer) tables[1]).force();
+            channel.close();
+        }
+    }
+
+    /**
+     * Hashes a key to 64 bits: FNV-1a over the characters, then the MurmurHash3 finalizer to spread the bits.
+     * @param key Key text
+     * @return Key hash
+     */
+    static long hash(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private void rotateIfNeeded() {
+        int current = current();
+        if (count(current) < maxKeys && System.currentTimeMillis() - started(current) < windowMillis) {
+            return;
+        }
+        // The previous generation is dropped and reused as the new current one
+        int next = 1 - current;
+        zero(tables[next]);
+        setCount(next, 0);
+        header.putLong(STARTED_OFFSET + next * Long.BYTES, System.currentTimeMillis());
+        header.putInt(CURRENT_OFFSET, next);
+    }
+
+    /**
+     * @return Slot holding the key, or -1
+     */
+    private int find(ByteBuffer table, long key) {
+        int slot = slot(key);
+        while (true) {
+            long stored = table.getLong(slot * Long.BYTES);
+            if (stored == key) {
+                return slot;
+            }
+            if (stored == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Empties a slot and shifts back the keys that follow it, so no probe sequence is broken.
+     */
+    private void delete(ByteBuffer table, int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (true) {
+            long key = table.getLong(next * Long.BYTES);
+            if (key == EMPTY) {
+                break;
+            }
+            int home = slot(key);
+            // Move the key into the hole when its home slot is not between the hole and its current slot
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                table.putLong(hole * Long.BYTES, key);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table.putLong(hole * Long.BYTES, EMPTY);
+    }
+
+    private int slot(long key) {
+        return (int) key & mask;
+    }
+
+    private void reset() {
+        zero(tables[0]);
+        zero(tables[1]);
+        long now = System.currentTimeMillis();
+        header.putLong(MAGIC_OFFSET, MAGIC);
+        header.putLong(CAPACITY_OFFSET, capacity);
+        header.putInt(CURRENT_OFFSET, 0);
+        setCount(0, 0);
+        setCount(1, 0);
+        header.putLong(STARTED_OFFSET, now);
+        header.putLong(STARTED_OFFSET + Long.BYTES, now);
+    }
+
+    private int current() {
+        return header.getInt(CURRENT_OFFSET);
+    }
+
+    private long count(int generation) {
+        return header.getLong(COUNT_OFFSET + generation * Long.BYTES);
+    }
+
+    private void setCount(int generation, long count) {
+        header.putLong(COUNT_OFFSET + generation * Long.BYTES, count);
+    }
+
+    private long started(int generation) {
+        return header.getLong(STARTED_OFFSET + generation * Long.BYTES);
+    }
+
+    // 0 marks an empty slot, so it cannot be a key
+    private static long normalize(long hash) {
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    private static void zero(ByteBuffer table) {
+        for (int position = 0; position < table.capacity(); position += ZEROS.length) {
+            table.put(position, ZEROS, 0, Math.min(ZEROS.length, table.capacity() - position));
+        }
+    }
+}
@@ -1,34 +1,86 @@
 package co.com.fduenasc;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.camel.ProducerTemplate;
 import org.apache.camel.builder.RouteBuilder;
-import org.jboss.logging.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.util.Locale;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Exercise1Router is a class that configures an Apache Camel route
  * to print sequential numbers starting from 0, every 3 seconds using the timer component.
  * Uses a counter that increments with each timer execution.
+ * In load mode the timer starts a {@link LoadGenerator} run against a direct: endpoint instead.
  */
 @ApplicationScoped
 public class Exercise1Router extends RouteBuilder {
 
-    private static final Logger LOGGER = Logger.getLogger(Exercise1Router.class);
     private static final int TIMER_DELAY_MS = 3000; // 3 seconds
     
+    // Modes
+    private static final String MODE_LOAD = "load";
+
     // Counter that starts at 0 and increments with each timer execution
     private final AtomicLong counter = new AtomicLong(0);
 
+    // "counter" prints the sequential numbers, "load" sends load to exercise1.load.endpoint
+    @ConfigProperty(name = "exercise1.mode", defaultValue = "counter")
+    String mode;
+
+    @ConfigProperty(name = "exercise1.load.endpoint", defaultValue = "direct:start")
+    String loadEndpoint;
+
+    @ConfigProperty(name = "exercise1.load.body", defaultValue = "Mensaje de carga")
+    String loadBody;
+
+    // constant, step or ramp
+    @ConfigProperty(name = "exercise1.load.profile", defaultValue = "constant")
+    String loadProfile;
+
+    // Messages per second at the start of the run (the whole run for the constant profile)
+    @ConfigProperty(name = "exercise1.load.rate", defaultValue = "100")
+    double loadRate;
+
+    // Messages per second reached at the end of a step or ramp profile
+    @ConfigProperty(name = "exercise1.load.target-rate", defaultValue = "1000")
+    double loadTargetRate;
+
+    @ConfigProperty(name = "exercise1.load.steps", defaultValue = "5")
+    int loadSteps;
+
+    @ConfigProperty(name = "exercise1.load.duration-seconds", defaultValue = "60")
+    long loadDurationSeconds;
+
+    @Inject
+    RouteLog routeLog;
+
     @Override
     public void configure() throws Exception {
+        if (MODE_LOAD.equalsIgnoreCase(mode)) {
+            // Route that starts a single load run once the application is up
+            from("timer:exercise1-load?repeatCount=1&delay=" + TIMER_DELAY_MS)
+                    .process(exchange -> {
+                        try (ProducerTemplate template = exchange.getContext().createProducerTemplate()) {
+                            new LoadGenerator(template, loadEndpoint, loadBody,
+                                    LoadGenerator.Profile.valueOf(loadProfile.toUpperCase(Locale.ROOT)),
+                                    loadRate, loadTargetRate, loadSteps, loadDurationSeconds).run();
+                        }
+                    })
+                    .routeId("exercise1-load-route");
+            return;
+        }
+
         // Route that prints sequential numbers starting from 0, every 3 seconds
         // The counter increments with each timer execution
         from("timer:exercise1?delay=" + TIMER_DELAY_MS + "&period=" + TIMER_DELAY_MS)
                 .process(exchange -> {
                     // Get and increment the counter (starts at 0)
-                    long currentNumber = counter.getAndIncrement();
-                    LOGGER.info("Número secuencial: " + currentNumber);
-                });
+                    exchange.getIn().setBody(counter.getAndIncrement());
+                })
+                .process(routeLog.info("exercise1-route", "Número secuencial: ${body}"))
+                .routeId("exercise1-route");
     }
 }
@@ -1,6 +1,7 @@
 package co.com.fduenasc;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import org.apache.camel.builder.RouteBuilder;
 
 /**
@@ -12,14 +13,18 @@ import org.apache.camel.builder.RouteBuilder;
 public class Exercise2Router extends RouteBuilder {
 
     private static final String MESSAGE_TEXT = "Mensaje de texto fijo desde la ruta";
+    private static final String ROUTE_ID = "exercise2-route";
+
+    @Inject
+    RouteLog routeLog;
 
     @Override
     public void configure() throws Exception {
         // Route that reads from direct:start endpoint, sets a fixed text message,
-        // and logs it to console using the log component
+        // and logs it to console, sampled as configured for the route
         from("direct:start")
                 .setBody(constant(MESSAGE_TEXT))
-                .log("Contenido del mensaje: ${body}")
-                .routeId("exercise2-route");
+                .process(routeLog.info(ROUTE_ID, "Contenido del mensaje: ${body}"))
+                .routeId(ROUTE_ID);
     }
 }
@@ -1,28 +1,58 @@
 package co.com.fduenasc;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.builder.RouteBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Locale;
+
 /**
  * Exercise3Router is a class that configures an Apache Camel route
  * to transform a text message to uppercase using a custom Processor.
+ * In streaming mode large bodies are converted chunk by chunk while they are read.
  */
 @ApplicationScoped
 public class Exercise3Router extends RouteBuilder {
 
     private static final Logger LOGGER = Logger.getLogger(Exercise3Router.class);
+    private static final String ROUTE_ID = "exercise3-route";
+
+    // Uppercase modes
+    private static final String UPPERCASE_MODE_STREAMING = "streaming";
+
+    // "string" converts the whole body as a String, "streaming" converts InputStream/byte[] bodies in chunks
+    @ConfigProperty(name = "exercise3.uppercase.mode", defaultValue = "string")
+    String uppercaseMode;
+
+    @ConfigProperty(name = "exercise3.uppercase.chunk-size", defaultValue = "8192")
+    int chunkSize;
+
+    @Inject
+    RouteLog routeLog;
 
     @Override
     public void configure() throws Exception {
-        // Route that reads from direct:uppercase endpoint, transforms the message
-        // to uppercase using a custom Processor, and displays the result in console
-        from("direct:uppercase")
-                .process(new UppercaseProcessor())
-                .log("Texto transformado a mayúsculas: ${body}")
-                .routeId("exercise3-route");
+        if (UPPERCASE_MODE_STREAMING.equalsIgnoreCase(uppercaseMode)) {
+            // Route that reads from direct:uppercase endpoint and converts the body to uppercase
+            // while it is read; stream bodies are logged without reading them
+            from("direct:uppercase")
+                    .process(new StreamingUppercaseProcessor(chunkSize))
+                    .process(routeLog.info(ROUTE_ID, "Texto transformado a mayúsculas: ${body}"))
+                    .routeId(ROUTE_ID);
+        } else {
+            // Route that reads from direct:uppercase endpoint, transforms the message
+            // to uppercase using a custom Processor, and displays the result in console
+            from("direct:uppercase")
+                    .process(new UppercaseProcessor())
+                    .process(routeLog.info(ROUTE_ID, "Texto transformado a mayúsculas: ${body}"))
+                    .routeId(ROUTE_ID);
+        }
         
         // Test route that sends sample messages to direct:uppercase for demonstration
         from("timer:test-uppercase?repeatCount=10&delay=2000")
@@ -35,7 +65,7 @@ public class Exercise3Router extends RouteBuilder {
      * Custom Processor that transforms the message body to uppercase.
      * Implements the Processor interface to provide reusable transformation logic.
      */
-    private static class UppercaseProcessor implements Processor {
+    static class UppercaseProcessor implements Processor {
 
         @Override
         public void process(Exchange exchange) throws Exception {
@@ -54,7 +84,48 @@ public class Exercise3Router extends RouteBuilder {
             // Replace the message body with the transformed text
             exchange.getIn().setBody(uppercaseText);
             
-            LOGGER.debug("Transformed text from '" + body + "' to '" + uppercaseText + "'");
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Transformed text from '" + body + "' to '" + uppercaseText + "'");
+            }
+        }
+    }
+
+    /**
+     * Processor that converts the message body to uppercase without materializing it.
+     * InputStream and byte[] bodies are replaced by an {@link UppercaseInputStream} that converts
+     * them in chunks as they are read; small String bodies are converted directly.
+     */
+    static class StreamingUppercaseProcessor implements Processor {
+
+        private final int chunkSize;
+
+        StreamingUppercaseProcessor(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public void process(Exchange exchange) throws Exception {
+            Object body = exchange.getIn().getBody();
+
+            // Handle null case
+            if (body == null) {
+                LOGGER.warn("Message body is null, cannot convert to uppercase");
+                return;
+            }
+
+            if (body instanceof String text) {
+                exchange.getIn().setBody(text.toUpperCase(Locale.ROOT));
+                return;
+            }
+
+            InputStream source = body instanceof byte[] bytes
+                    ? new ByteArrayInputStream(bytes)
+                    : exchange.getIn().getMandatoryBody(InputStream.class);
+            exchange.getIn().setBody(new UppercaseInputStream(source, chunkSize));
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Converting " + body.getClass().getSimpleName() + " body to uppercase in chunks of " + chunkSize + " bytes");
+            }
         }
     }
 }
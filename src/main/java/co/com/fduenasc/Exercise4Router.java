@@ -1,38 +1,87 @@
 package co.com.fduenasc;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import org.apache.camel.builder.RouteBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.List;
 
 /**
  * Exercise4Router is a class that configures an Apache Camel route
  * to route messages based on their content using the choice EIP pattern.
+ * By default the keyword rules are compiled into a single {@link KeywordRouter}
+ * that scans the body once; the original choice() branches remain available.
  */
 @ApplicationScoped
 public class Exercise4Router extends RouteBuilder {
 
     private static final String DIRECT_CHOICE_ENDPOINT = "direct:choice";
+    private static final String ROUTE_ID = "exercise4-route";
+
+    // Routing modes
+    private static final String ROUTING_MODE_CHOICE = "choice";
+
+    // "automaton" uses the compiled keyword rules, "choice" the sequential simple() checks
+    @ConfigProperty(name = "exercise4.routing.mode", defaultValue = "automaton")
+    String routingMode;
+
+    // Rules written as keyword=destination, in priority order (the first matching rule wins)
+    @ConfigProperty(name = "exercise4.routing.rules",
+            defaultValue = "admin=log:admin?level=INFO&showBody=true,user=log:user?level=INFO&showBody=true")
+    List<String> routingRules;
+
+    @ConfigProperty(name = "exercise4.routing.default-destination", defaultValue = "log:default?level=INFO&showBody=true")
+    String defaultDestination;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    @Inject
+    RouteLog routeLog;
 
     @Override
     public void configure() throws Exception {
+        if (ROUTING_MODE_CHOICE.equalsIgnoreCase(routingMode)) {
+            configureChoiceRoute();
+        } else {
+            // Route that reads from direct:choice endpoint, finds the first matching keyword rule
+            // in a single pass over the body and sends the message to that rule's destination
+            from(DIRECT_CHOICE_ENDPOINT)
+                    .process(KeywordRouter.compile(routingRules, defaultDestination))
+                    .process(routeMetrics.countBranchFromHeader(ROUTE_ID, KeywordRouter.KEYWORD_HEADER))
+                    .toD("${header." + KeywordRouter.DESTINATION_HEADER + "}")
+                    .process(routeLog.info(ROUTE_ID, "Message routed to ${header." + KeywordRouter.KEYWORD_HEADER + "} log: ${body}"))
+                    .routeId(ROUTE_ID);
+        }
+        configureTestRoutes();
+    }
+
+    private void configureChoiceRoute() {
         // Route that reads from direct:choice endpoint and routes messages
         // based on their content using the choice EIP pattern
         from(DIRECT_CHOICE_ENDPOINT)
                 .choice()
                     // If message contains "admin", route to log:admin
                     .when(simple("${body} contains 'admin'"))
+                        .process(routeMetrics.countBranch(ROUTE_ID, "admin"))
                         .to("log:admin?level=INFO&showBody=true")
-                        .log("Message routed to admin log: ${body}")
+                        .process(routeLog.info(ROUTE_ID, "Message routed to admin log: ${body}"))
                     // If message contains "user", route to log:user
                     .when(simple("${body} contains 'user'"))
+                        .process(routeMetrics.countBranch(ROUTE_ID, "user"))
                         .to("log:user?level=INFO&showBody=true")
-                        .log("Message routed to user log: ${body}")
+                        .process(routeLog.info(ROUTE_ID, "Message routed to user log: ${body}"))
                     // Otherwise, route to log:default
                     .otherwise()
+                        .process(routeMetrics.countBranch(ROUTE_ID, "default"))
                         .to("log:default?level=INFO&showBody=true")
-                        .log("Message routed to default log: ${body}")
+                        .process(routeLog.info(ROUTE_ID, "Message routed to default log: ${body}"))
                 .end()
-                .routeId("exercise4-route");
-        
+                .routeId(ROUTE_ID);
+    }
+
+    private void configureTestRoutes() {
         // Test route that sends sample messages to direct:choice for demonstration
         from("timer:test-choice?repeatCount=1&delay=2000")
                 .process(exchange -> {
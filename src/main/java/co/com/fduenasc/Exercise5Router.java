@@ -1,27 +1,93 @@
 package co.com.fduenasc;
 
+import io.micrometer.core.instrument.Counter;
+import io.vertx.ext.web.client.WebClientOptions;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.camel.Exchange;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.FilterDefinition;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 /**
  * Exercise5Router is a class that configures an Apache Camel route
  * to dynamically invoke different REST APIs using toD based on user type.
+ * In async dispatch mode each API is called through vertx-http with its own connection pool,
+ * behind its own non-blocking circuit breaker and bulkhead, so a slow API cannot hold up calls to the other
+ * and no route thread waits for a response.
  */
 @ApplicationScoped
 public class Exercise5Router extends RouteBuilder {
 
     private static final String DIRECT_DYNAMIC_API_ENDPOINT = "direct:dynamic-api";
+    private static final String DIRECT_API_A_ENDPOINT = "direct:exercise5-api-a";
+    private static final String DIRECT_API_B_ENDPOINT = "direct:exercise5-api-b";
+    private static final String ROUTE_ID = "exercise5-route";
+
+    // Exchange property holding the running upstream call timer
+    private static final String UPSTREAM_TIMER = "Exercise5UpstreamTimer";
     
     // API endpoints (using mock APIs for demonstration)
-    private static final String API_A_URL = "https://httpbin.org/post"; // Mock API for user
-    private static final String API_B_URL = "https://httpbin.org/put";  // Mock API for admin
+    private static final String DEFAULT_API_A_URL = "https://httpbin.org/post"; // Mock API for user
+    private static final String DEFAULT_API_B_URL = "https://httpbin.org/put";  // Mock API for admin
+
+    // Dispatch modes
+    private static final String DISPATCH_MODE_ASYNC = "async";
+
+    @ConfigProperty(name = "exercise5.api-a.url", defaultValue = DEFAULT_API_A_URL)
+    String apiAUrl;
+
+    @ConfigProperty(name = "exercise5.api-b.url", defaultValue = DEFAULT_API_B_URL)
+    String apiBUrl;
+
+    // "blocking" uses camel-http, "async" uses vertx-http behind a circuit breaker per API
+    @ConfigProperty(name = "exercise5.dispatch.mode", defaultValue = "blocking")
+    String dispatchMode;
+
+    // Pooled connections kept per target host
+    @ConfigProperty(name = "exercise5.http.max-pool-size", defaultValue = "20")
+    int maxPoolSize;
+
+    // Concurrent calls allowed per API before the bulkhead rejects new ones with 503
+    @ConfigProperty(name = "exercise5.http.max-in-flight", defaultValue = "50")
+    int maxInFlight;
+
+    // Requests waiting for a pooled connection before Vert.x fails new ones (-1 = no limit)
+    @ConfigProperty(name = "exercise5.http.max-wait-queue-size", defaultValue = "-1")
+    int maxWaitQueueSize;
+
+    @ConfigProperty(name = "exercise5.http.connect-timeout-ms", defaultValue = "2000")
+    int connectTimeoutMs;
+
+    @ConfigProperty(name = "exercise5.http.read-timeout-ms", defaultValue = "5000")
+    long readTimeoutMs;
+
+    // Percentage of failed calls, over at least request-volume-threshold calls, that opens the circuit
+    @ConfigProperty(name = "exercise5.circuit-breaker.failure-ratio", defaultValue = "50")
+    int failureRatio;
+
+    @ConfigProperty(name = "exercise5.circuit-breaker.request-volume-threshold", defaultValue = "20")
+    int requestVolumeThreshold;
+
+    // Time the circuit stays open before letting a trial call through
+    @ConfigProperty(name = "exercise5.circuit-breaker.delay-ms", defaultValue = "5000")
+    long circuitBreakerDelayMs;
+
+    @Inject
+    ApiResponseCache responseCache;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    @Inject
+    RouteLog routeLog;
 
     @Override
     public void configure() throws Exception {
         // Global error handler for HTTP exceptions
         onException(org.apache.camel.http.base.HttpOperationFailedException.class)
                 .handled(true)
-                .log("ERROR: HTTP operation failed")
+                .process(routeLog.error(ROUTE_ID, "HTTP operation failed: ${exception.message}"))
                 .to("log:error?level=ERROR&showBody=true&showException=true")
                 .end();
         
@@ -31,25 +97,32 @@ public class Exercise5Router extends RouteBuilder {
                 .choice()
                     // If user type is "user", call API A
                     .when(simple("${body} contains 'user'"))
-                        .log("Routing to API A for user type")
+                        .process(routeMetrics.countBranch(ROUTE_ID, "user"))
+                        .process(routeLog.info(ROUTE_ID, "Routing to API A for user type"))
                         .setHeader("User-Type", constant("user"))
                         .setHeader("CamelHttpMethod", constant("POST"))
-                        .toD(API_A_URL + "?bridgeEndpoint=true&throwExceptionOnFailure=false")
-                        .log("Response from API A: ${body}")
+                        .to(DIRECT_API_A_ENDPOINT)
+                        .process(routeLog.info(ROUTE_ID, "Response from API A: ${body}"))
                     // If user type is "admin", call API B
                     .when(simple("${body} contains 'admin'"))
-                        .log("Routing to API B for admin type")
+                        .process(routeMetrics.countBranch(ROUTE_ID, "admin"))
+                        .process(routeLog.info(ROUTE_ID, "Routing to API B for admin type"))
                         .setHeader("User-Type", constant("admin"))
                         .setHeader("CamelHttpMethod", constant("PUT"))
-                        .toD(API_B_URL + "?bridgeEndpoint=true&throwExceptionOnFailure=false")
-                        .log("Response from API B: ${body}")
+                        .to(DIRECT_API_B_ENDPOINT)
+                        .process(routeLog.info(ROUTE_ID, "Response from API B: ${body}"))
                     // For any other value, send to error log
                     .otherwise()
-                        .log("ERROR: Unknown user type - ${body}")
+                        .process(routeMetrics.countBranch(ROUTE_ID, "unknown"))
+                        .process(routeLog.info(ROUTE_ID, "ERROR: Unknown user type - ${body}"))
                         .to("log:error?level=ERROR&showBody=true")
-                        .log("Message sent to error log: ${body}")
+                        .process(routeLog.info(ROUTE_ID, "Message sent to error log: ${body}"))
                 .end()
-                .routeId("exercise5-route");
+                .routeId(ROUTE_ID);
+
+        // Routes that call each API with the configured dispatch mode
+        configureApiRoute(DIRECT_API_A_ENDPOINT, "exercise5-api-a-route", "API A", apiAUrl);
+        configureApiRoute(DIRECT_API_B_ENDPOINT, "exercise5-api-b-route", "API B", apiBUrl);
         
         // Test route that sends sample messages with different user types
         from("timer:test-dynamic-api-user?repeatCount=1&delay=2000")
@@ -67,4 +140,66 @@ public class Exercise5Router extends RouteBuilder {
                 .to(DIRECT_DYNAMIC_API_ENDPOINT)
                 .routeId("exercise5-test-route-error");
     }
+
+    /**
+     * Configures the route that sends the request to one of the remote APIs.
+     * @param endpoint Direct endpoint of the route
+     * @param routeId Route identifier
+     * @param apiName API name used in logs and as the tag of the upstream latency timer
+     * @param url API URL
+     */
+    private void configureApiRoute(String endpoint, String routeId, String apiName, String url) {
+        // Responses served from the cache skip the call to the API
+        FilterDefinition call = from(endpoint)
+                .routeId(routeId)
+                .process(responseCache)
+                .filter(exchangeProperty(ApiResponseCache.CACHE_HIT).isNotEqualTo(true))
+                    .process(routeMetrics.startTimer(UPSTREAM_TIMER));
+
+        if (DISPATCH_MODE_ASYNC.equalsIgnoreCase(dispatchMode)) {
+            // Each API gets its own web client options, and with them its own connection pool
+            String webClientOptionsBean = routeId + "-web-client-options";
+            WebClientOptions webClientOptions = new WebClientOptions()
+                    .setMaxPoolSize(maxPoolSize)
+                    .setMaxWaitQueueSize(maxWaitQueueSize)
+                    .setKeepAlive(true)
+                    .setConnectTimeout(connectTimeoutMs);
+            getContext().getRegistry().bind(webClientOptionsBean, webClientOptions);
+
+            // vertx-http is asynchronous, so the breaker wraps the call instead of running it:
+            // the route thread is released as soon as the request is sent, and the outcome,
+            // including 5xx responses, is recorded when the response arrives
+            ApiCircuitBreaker breaker = new ApiCircuitBreaker(maxInFlight, requestVolumeThreshold, failureRatio,
+                    circuitBreakerDelayMs, Counter.builder("exercise5.circuit.rejected").tag("api", apiName)
+                            .register(routeMetrics.registry()));
+            call.process(breaker::acquire)
+                    .choice()
+                        // Circuit open or bulkhead full
+                        .when(exchangeProperty(ApiCircuitBreaker.REJECTED).isNotNull())
+                            .process(routeLog.error(routeId, apiName + " is unavailable: ${exchangeProperty."
+                                    + ApiCircuitBreaker.REJECTED + "}"))
+                            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(503))
+                            .setBody(constant(apiName + " is unavailable"))
+                        .otherwise()
+                            .doTry()
+                                .to("vertx-http:" + url + "?throwExceptionOnFailure=false&timeout=" + readTimeoutMs
+                                        + "&webClientOptions=#" + webClientOptionsBean)
+                            // Connection failure, timeout or Vert.x wait queue full
+                            .doCatch(Exception.class)
+                                .process(routeLog.error(routeId, apiName + " is unavailable: ${exception.message}"))
+                                .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(503))
+                                .setBody(constant(apiName + " is unavailable"))
+                            .doFinally()
+                                .process(breaker::release)
+                            .end()
+                    .end();
+        } else {
+            call.toD(url + "?bridgeEndpoint=true&throwExceptionOnFailure=false");
+        }
+
+        // Upstream latency includes fallbacks, so an open circuit shows up as fast calls
+        call.process(routeMetrics.stopTimer(UPSTREAM_TIMER, "exercise5.upstream.latency", "api", apiName))
+                .process(responseCache::store)
+                .end();
+    }
 }
@@ -0,0 +1,11 @@
+package co.com.fduenasc;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Immutable Game of Thrones character sent to RabbitMQ.
+ * Value equality lets identical characters share the same pre-serialized payload.
+ */
+@JsonPropertyOrder({"name", "house", "title", "description", "status"})
+public record GameOfThronesCharacter(String name, String house, String title, String description, String status) {
+}
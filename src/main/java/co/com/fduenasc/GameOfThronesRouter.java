@@ -1,11 +1,16 @@
 package co.com.fduenasc;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.ProcessorDefinition;
+import org.apache.camel.model.SplitDefinition;
 import org.apache.camel.model.dataformat.JsonLibrary;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -28,96 +33,174 @@ public class GameOfThronesRouter extends RouteBuilder {
     private static final String STATUS_DECEASED = "Deceased";
     private static final String STATUS_ALIVE = "Alive";
 
+    private static final String DIRECT_GOT_CHARACTERS_ENDPOINT = "direct:got-characters";
+    private static final String ROUTE_ID = "got-characters-route";
+    private static final String SUMMARY_ROUTE_ID = "got-house-summary-route";
+
+    // Exchange property holding the running publish timer
+    private static final String PUBLISH_TIMER = "GotPublishTimer";
+
+    // Publisher modes
+    private static final String PUBLISHER_MODE_BATCH = "batch";
+    private static final String PUBLISHER_MODE_JOURNAL = "journal";
+
+    // Serialization modes
+    private static final String SERIALIZATION_MODE_TYPED = "typed";
+
+    // The 7 characters from different houses
+    static final List<GameOfThronesCharacter> CHARACTERS = List.of(
+            // 1. Stark Family
+            new GameOfThronesCharacter("Eddard Stark", "Stark", "Lord of Winterfell",
+                    "Honorable Warden of the North, known for his strong sense of justice", STATUS_DECEASED),
+            // 2. Lannister Family
+            new GameOfThronesCharacter("Tyrion Lannister", "Lannister", "Hand of the Queen",
+                    "The Imp, known for his wit and intelligence despite his stature", STATUS_ALIVE),
+            // 3. Targaryen Family
+            new GameOfThronesCharacter("Daenerys Targaryen", "Targaryen", "Queen of the Andals and the First Men",
+                    "The Mother of Dragons, breaker of chains", STATUS_DECEASED),
+            // 4. Baratheon Family
+            new GameOfThronesCharacter("Robert Baratheon", "Baratheon", "King of the Seven Kingdoms",
+                    "The Usurper, known for his strength in battle", STATUS_DECEASED),
+            // 5. Greyjoy Family
+            new GameOfThronesCharacter("Theon Greyjoy", "Greyjoy", "Prince of Winterfell",
+                    "Reek, torn between his birth family and the Starks who raised him", STATUS_DECEASED),
+            // 6. Tyrell Family
+            new GameOfThronesCharacter("Margaery Tyrell", "Tyrell", "Queen of the Seven Kingdoms",
+                    "The Queen of Thorns' granddaughter, known for her political acumen", STATUS_DECEASED),
+            // 7. Martell Family
+            new GameOfThronesCharacter("Oberyn Martell", "Martell", "Prince of Dorne",
+                    "The Red Viper, known for his combat skills and passionate nature", STATUS_DECEASED));
+
+    // "single" sends one message per split exchange, "batch" uses the pipelined batch publisher,
+    // "journal" goes through the local journal so messages survive a broker outage
+    @ConfigProperty(name = "got.publisher.mode", defaultValue = "single")
+    String publisherMode;
+
+    // Endpoint each character is sent to in single mode
+    @ConfigProperty(name = "got.publisher.endpoint", defaultValue = "spring-rabbitmq:got-exchange?routingKey=character")
+    String publishEndpoint;
+
+    // "map" marshals a HashMap per character, "typed" writes the immutable records with a pre-built writer
+    @ConfigProperty(name = "got.serialization.mode", defaultValue = "map")
+    String serializationMode;
+
+    // Per-house counts over time windows, sent as summaries to aggregation.endpoint
+    @ConfigProperty(name = "got.aggregation.enabled", defaultValue = "false")
+    boolean aggregationEnabled;
+
+    @ConfigProperty(name = "got.aggregation.endpoint", defaultValue = "spring-rabbitmq:got-exchange?routingKey=character-summary")
+    String aggregationEndpoint;
+
+    @ConfigProperty(name = "got.aggregation.slide-ms", defaultValue = "10000")
+    long aggregationSlideMs;
+
+    @Inject
+    RabbitMQBatchPublisher batchPublisher;
+
+    @Inject
+    HouseAggregator houseAggregator;
+
+    @Inject
+    CharacterSerializer characterSerializer;
+
+    @Inject
+    PayloadCodec payloadCodec;
+
+    @Inject
+    JournalingPublisher journalingPublisher;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    @Inject
+    RouteLog routeLog;
+
     @Override
     public void configure() {
         // Route that sends 7 JSON messages to RabbitMQ with Game of Thrones characters
         // The ConnectionFactory bean will be automatically detected by the spring-rabbitmq component
         from("timer:got-characters?repeatCount=1&delay=2000")
+                .to(DIRECT_GOT_CHARACTERS_ENDPOINT)
+                .routeId("got-timer-route");
+
+        boolean typed = SERIALIZATION_MODE_TYPED.equalsIgnoreCase(serializationMode);
+        ProcessorDefinition<?> route = from(DIRECT_GOT_CHARACTERS_ENDPOINT)
+                .routeId(ROUTE_ID)
                 .process(exchange -> {
-                    // Create the 7 characters from different houses
-                    Map<String, Object>[] characters = createGameOfThronesCharacters();
-                    exchange.getIn().setBody(characters);
-                    LOGGER.info("Prepared " + characters.length + " Game of Thrones characters to send to RabbitMQ");
-                })
-                .split(body())
-                    .marshal().json(JsonLibrary.Jackson)
-                    .to("spring-rabbitmq:got-exchange?routingKey=character")
-                    .log("Sent character to RabbitMQ: ${body}")
-                .end();
+                    if (typed) {
+                        // The records are immutable, so the same list is sent every time
+                        exchange.getIn().setBody(CHARACTERS);
+                    } else {
+                        // Create the 7 characters from different houses
+                        exchange.getIn().setBody(createGameOfThronesCharacters());
+                    }
+                    LOGGER.info("Prepared " + CHARACTERS.size() + " Game of Thrones characters to send to RabbitMQ");
+                });
+
+        if (aggregationEnabled) {
+            // Characters are counted once, before they are split or serialized
+            route.process(houseAggregator);
+
+            // Summaries of the windows completed since the last run, one message each
+            from("timer:got-house-summary?period=" + aggregationSlideMs)
+                    .routeId(SUMMARY_ROUTE_ID)
+                    .process(exchange -> exchange.getIn().setBody(houseAggregator.summarize()))
+                    .split(body())
+                        .marshal().json(JsonLibrary.Jackson)
+                        .to(aggregationEndpoint)
+                        .process(routeLog.info(SUMMARY_ROUTE_ID, "Sent house summary to RabbitMQ: ${body}"))
+                    .end();
+        }
+
+        if (PUBLISHER_MODE_BATCH.equalsIgnoreCase(publisherMode)) {
+            if (typed) {
+                route.process(characterSerializer);
+            }
+            // The whole array goes to the batch publisher, which serializes each character,
+            // pipelines the sends and only continues once the broker has confirmed all of them
+            route
+                    .process(batchPublisher)
+                    .process(routeLog.info(ROUTE_ID, "Sent characters to RabbitMQ in batch mode, all confirmed by the broker"));
+        } else {
+            SplitDefinition split = route.split(body());
+            if (typed) {
+                split.process(characterSerializer);
+            } else if (payloadCodec.isPlainJson()) {
+                split.marshal().json(JsonLibrary.Jackson);
+            } else {
+                // Smile, CBOR or LZ4 compressed payloads, see got.payload.format
+                split.process(payloadCodec);
+            }
+            split.process(routeMetrics.startTimer(PUBLISH_TIMER));
+            if (PUBLISHER_MODE_JOURNAL.equalsIgnoreCase(publisherMode)) {
+                split.process(journalingPublisher);
+            } else {
+                split.to(publishEndpoint);
+            }
+            split
+                    .process(routeMetrics.stopTimer(PUBLISH_TIMER, RabbitMQBatchPublisher.PUBLISH_LATENCY_TIMER, "mode", publisherMode))
+                    .process(routeLog.info(ROUTE_ID, "Sent character to RabbitMQ: ${body}"))
+                    .end();
+        }
     }
 
     /**
      * Creates an array of 7 Game of Thrones characters from different houses.
      * @return Array of character maps
      */
-    private Map<String, Object>[] createGameOfThronesCharacters() {
+    static Map<String, Object>[] createGameOfThronesCharacters() {
         @SuppressWarnings("unchecked")
-        Map<String, Object>[] characters = new Map[7];
-
-        // 1. Stark Family
-        Map<String, Object> nedStark = new HashMap<>();
-        nedStark.put(FIELD_NAME, "Eddard Stark");
-        nedStark.put(FIELD_HOUSE, "Stark");
-        nedStark.put(FIELD_TITLE, "Lord of Winterfell");
-        nedStark.put(FIELD_DESCRIPTION, "Honorable Warden of the North, known for his strong sense of justice");
-        nedStark.put(FIELD_STATUS, STATUS_DECEASED);
-        characters[0] = nedStark;
-
-        // 2. Lannister Family
-        Map<String, Object> tyrionLannister = new HashMap<>();
-        tyrionLannister.put(FIELD_NAME, "Tyrion Lannister");
-        tyrionLannister.put(FIELD_HOUSE, "Lannister");
-        tyrionLannister.put(FIELD_TITLE, "Hand of the Queen");
-        tyrionLannister.put(FIELD_DESCRIPTION, "The Imp, known for his wit and intelligence despite his stature");
-        tyrionLannister.put(FIELD_STATUS, STATUS_ALIVE);
-        characters[1] = tyrionLannister;
-
-        // 3. Targaryen Family
-        Map<String, Object> daenerysTargaryen = new HashMap<>();
-        daenerysTargaryen.put(FIELD_NAME, "Daenerys Targaryen");
-        daenerysTargaryen.put(FIELD_HOUSE, "Targaryen");
-        daenerysTargaryen.put(FIELD_TITLE, "Queen of the Andals and the First Men");
-        daenerysTargaryen.put(FIELD_DESCRIPTION, "The Mother of Dragons, breaker of chains");
-        daenerysTargaryen.put(FIELD_STATUS, STATUS_DECEASED);
-        characters[2] = daenerysTargaryen;
-
-        // 4. Baratheon Family
-        Map<String, Object> robertBaratheon = new HashMap<>();
-        robertBaratheon.put(FIELD_NAME, "Robert Baratheon");
-        robertBaratheon.put(FIELD_HOUSE, "Baratheon");
-        robertBaratheon.put(FIELD_TITLE, "King of the Seven Kingdoms");
-        robertBaratheon.put(FIELD_DESCRIPTION, "The Usurper, known for his strength in battle");
-        robertBaratheon.put(FIELD_STATUS, STATUS_DECEASED);
-        characters[3] = robertBaratheon;
-
-        // 5. Greyjoy Family
-        Map<String, Object> theonGreyjoy = new HashMap<>();
-        theonGreyjoy.put(FIELD_NAME, "Theon Greyjoy");
-        theonGreyjoy.put(FIELD_HOUSE, "Greyjoy");
-        theonGreyjoy.put(FIELD_TITLE, "Prince of Winterfell");
-        theonGreyjoy.put(FIELD_DESCRIPTION, "Reek, torn between his birth family and the Starks who raised him");
-        theonGreyjoy.put(FIELD_STATUS, STATUS_DECEASED);
-        characters[4] = theonGreyjoy;
-
-        // 6. Tyrell Family
-        Map<String, Object> margaeryTyrell = new HashMap<>();
-        margaeryTyrell.put(FIELD_NAME, "Margaery Tyrell");
-        margaeryTyrell.put(FIELD_HOUSE, "Tyrell");
-        margaeryTyrell.put(FIELD_TITLE, "Queen of the Seven Kingdoms");
-        margaeryTyrell.put(FIELD_DESCRIPTION, "The Queen of Thorns' granddaughter, known for her political acumen");
-        margaeryTyrell.put(FIELD_STATUS, STATUS_DECEASED);
-        characters[5] = margaeryTyrell;
-
-        // 7. Martell Family
-        Map<String, Object> oberynMartell = new HashMap<>();
-        oberynMartell.put(FIELD_NAME, "Oberyn Martell");
-        oberynMartell.put(FIELD_HOUSE, "Martell");
-        oberynMartell.put(FIELD_TITLE, "Prince of Dorne");
-        oberynMartell.put(FIELD_DESCRIPTION, "The Red Viper, known for his combat skills and passionate nature");
-        oberynMartell.put(FIELD_STATUS, STATUS_DECEASED);
-        characters[6] = oberynMartell;
-
+        Map<String, Object>[] characters = new Map[CHARACTERS.size()];
+        for (int i = 0; i < characters.length; i++) {
+            GameOfThronesCharacter character = CHARACTERS.get(i);
+            Map<String, Object> map = new HashMap<>();
+            map.put(FIELD_NAME, character.name());
+            map.put(FIELD_HOUSE, character.house());
+            map.put(FIELD_TITLE, character.title());
+            map.put(FIELD_DESCRIPTION, character.description());
+            map.put(FIELD_STATUS, character.status());
+            characters[i] = map;
+        }
         return characters;
     }
 }
-
@@ -0,0 +1,93 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.service.ServiceSupport;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * IdempotentRepository that keeps only the 64-bit hash of each key, in a {@link DeduplicationIndex}.
+ * Two keys with the same hash are taken as the same message; with 64-bit hashes the chance of
+ * that happening is about 1 in 10^6 among tens of millions of keys.
+ * The index is allocated when the repository first starts, kept while it is stopped so a restarted
+ * route still knows the keys it saw, and released when the repository shuts down.
+ */
+class HashedIdempotentRepository extends ServiceSupport implements IdempotentRepository {
+
+    private static final Logger LOGGER = Logger.getLogger(HashedIdempotentRepository.class);
+
+    private final long maxKeys;
+    private final long windowMillis;
+    private final Path snapshot;
+    private final Counter duplicates;
+    private volatile DeduplicationIndex index;
+
+    /**
+     * @param maxKeys Keys held by a generation of the index before it is rotated
+     * @param windowMillis Age of a generation of the index before it is rotated
+     * @param snapshot File the index is mapped to, or null to keep it in memory only
+     * @param duplicates Counter of the keys rejected as duplicates
+     */
+    HashedIdempotentRepository(long maxKeys, long windowMillis, Path snapshot, Counter duplicates) {
+        this.maxKeys = maxKeys;
+        this.windowMillis = windowMillis;
+        this.snapshot = snapshot;
+        this.duplicates = duplicates;
+    }
+
+    @Override
+    public boolean add(String key) {
+        boolean added = index.add(DeduplicationIndex.hash(key));
+        if (!added) {
+            duplicates.increment();
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return index.contains(DeduplicationIndex.hash(key));
+    }
+
+    @Override
+    public boolean remove(String key) {
+        return index.remove(DeduplicationIndex.hash(key));
+    }
+
+    @Override
+    public boolean confirm(String key) {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+    }
+
+    /**
+     * @return Keys in the index
+     */
+    long size() {
+        DeduplicationIndex current = index;
+        return current == null ? 0 : current.size();
+    }
+
+    @Override
+    protected void doStart() throws IOException {
+        if (index == null) {
+            index = new DeduplicationIndex(maxKeys, windowMillis, snapshot);
+            LOGGER.info("Deduplication index ready, " + index.size() + " keys recovered");
+        }
+    }
+
+    @Override
+    protected void doShutdown() throws IOException {
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HouseAggregator keeps running per-house counts of the characters sent by GameOfThronesRouter
+ * (alive, deceased and other statuses, and the latest title within the window) and turns them
+ * into window summaries.
+ * Counts are kept in a ring of time buckets of got.aggregation.slide-ms each, as one flat array of
+ * longs, so memory is fixed by the number of buckets and got.aggregation.max-houses; houses beyond
+ * that limit are counted under "Other".
+ * From the buckets it produces tumbling summaries (one per window-ms window) and sliding summaries
+ * (the last window-ms, every slide-ms), as soon as each bucket is complete.
+ */
+@ApplicationScoped
+public class HouseAggregator implements Processor {
+
+    static final String WINDOW_TUMBLING = "tumbling";
+    static final String WINDOW_SLIDING = "sliding";
+
+    private static final String FIELD_HOUSE = "house";
+    private static final String FIELD_TITLE = "title";
+    private static final String FIELD_STATUS = "status";
+    private static final String STATUS_ALIVE = "Alive";
+    private static final String STATUS_DECEASED = "Deceased";
+    private static final String OTHER_HOUSE = "Other";
+
+    // Counters kept per house and bucket
+    private static final int ALIVE = 0;
+    private static final int DECEASED = 1;
+    private static final int OTHER_STATUS = 2;
+    private static final int COUNTERS = 3;
+
+    @ConfigProperty(name = "got.aggregation.window-ms", defaultValue = "60000")
+    long windowMs;
+
+    // Bucket size, and how often sliding summaries are produced; window-ms must be a multiple of it
+    @ConfigProperty(name = "got.aggregation.slide-ms", defaultValue = "10000")
+    long slideMs;
+
+    @ConfigProperty(name = "got.aggregation.max-houses", defaultValue = "64")
+    int maxHouses;
+
+    // tumbling, sliding or both
+    @ConfigProperty(name = "got.aggregation.windows", defaultValue = "tumbling,sliding")
+    List<String> windows;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    private int bucketsPerWindow;
+    private int ringSize;
+    // counts[(bucket * maxHouses + house) * COUNTERS + counter], guarded by this
+    private long[] counts;
+    // Bucket number held by each ring slot, -1 when empty
+    private long[] bucketNumbers;
+    // latestTitles[bucket * maxHouses + house], the last title seen in the bucket, cleared with it
+    private String[] latestTitles;
+    private final Map<String, Integer> houseIndexes = new HashMap<>();
+    private String[] houses;
+    private long lastSummarizedBucket;
+    private Counter tumblingSummaries;
+    private Counter slidingSummaries;
+
+    /**
+     * Summary of a window.
+     * @param window tumbling or sliding
+     * @param start Start of the window, epoch milliseconds
+     * @param end End of the window (exclusive), epoch milliseconds
+     * @param houses Houses with at least one character in the window
+     */
+    public record WindowSummary(String window, long start, long end, List<HouseSummary> houses) {
+    }
+
+    /**
+     * Counts of a house within a window.
+     */
+    public record HouseSummary(String house, long alive, long deceased, long other, String latestTitle) {
+    }
+
+    @PostConstruct
+    void init() {
+        if (slideMs <= 0 || windowMs < slideMs || windowMs % slideMs != 0) {
+            throw new IllegalArgumentException("got.aggregation.window-ms must be a positive multiple of got.aggregation.slide-ms");
+        }
+        bucketsPerWindow = (int) (windowMs / slideMs);
+        // One window of complete buckets, the bucket being filled, and one spare for a late timer
+        ringSize = bucketsPerWindow + 2;
+        counts = new long[ringSize * maxHouses * COUNTERS];
+        bucketNumbers = new long[ringSize];
+        Arrays.fill(bucketNumbers, -1);
+        houses = new String[maxHouses];
+        latestTitles = new String[ringSize * maxHouses];
+        lastSummarizedBucket = System.currentTimeMillis() / slideMs - 1;
+
+        Gauge.builder("got.aggregation.houses", houseIndexes, Map::size).register(routeMetrics.registry());
+        tumblingSummaries = Counter.builder("got.aggregation.summaries").tag("window", WINDOW_TUMBLING).register(routeMetrics.registry());
+        slidingSummaries = Counter.builder("got.aggregation.summaries").tag("window", WINDOW_SLIDING).register(routeMetrics.registry());
+    }
+
+    @Override
+    public void process(Exchange exchange) {
+        Object body = exchange.getIn().getBody();
+        long now = System.currentTimeMillis();
+        if (body instanceof Collection<?> characters) {
+            for (Object character : characters) {
+                record(character, now);
+            }
+        } else if (body instanceof Object[] characters) {
+            for (Object character : characters) {
+                record(character, now);
+            }
+        } else {
+            record(body, now);
+        }
+    }
+
+    /**
+     * Counts a character in the bucket of the given time.
+     * @param character GameOfThronesCharacter or character map
+     * @param timestamp Epoch milliseconds
+     */
+    void record(Object character, long timestamp) {
+        String house;
+        String title;
+        String status;
+        if (character instanceof GameOfThronesCharacter typed) {
+            house = typed.house();
+            title = typed.title();
+            status = typed.status();
+        } else if (character instanceof Map<?, ?> map) {
+            house = (String) map.get(FIELD_HOUSE);
+            title = (String) map.get(FIELD_TITLE);
+            status = (String) map.get(FIELD_STATUS);
+        } else {
+            return;
+        }
+        int counter = STATUS_ALIVE.equals(status) ? ALIVE : STATUS_DECEASED.equals(status) ? DECEASED : OTHER_STATUS;
+
+        synchronized (this) {
+            int houseIndex = houseIndex(house == null ? OTHER_HOUSE : house);
+            int slot = slot(timestamp / slideMs);
+            counts[(slot * maxHouses + houseIndex) * COUNTERS + counter]++;
+            if (title != null) {
+                latestTitles[slot * maxHouses + houseIndex] = title;
+            }
+        }
+    }
+
+    /**
+     * Produces the summaries of the windows that ended since the last call.
+     * @return Summaries in time order, without empty windows
+     */
+    public List<WindowSummary> summarize() {
+        return summarize(System.currentTimeMillis());
+    }
+
+    synchronized List<WindowSummary> summarize(long now) {
+        List<WindowSummary> summaries = new ArrayList<>();
+        long lastComplete = now / slideMs - 1;
+        // Buckets older than the ring were overwritten already, so they are skipped
+        long from = Math.max(lastSummarizedBucket + 1, lastComplete - ringSize + 2);
+        for (long bucket = from; bucket <= lastComplete; bucket++) {
+            if (windows.contains(WINDOW_SLIDING)) {
+                addSummary(summaries, WINDOW_SLIDING, bucket);
+            }
+            if (windows.contains(WINDOW_TUMBLING) && (bucket + 1) % bucketsPerWindow == 0) {
+                addSummary(summaries, WINDOW_TUMBLING, bucket);
+            }
+        }
+        lastSummarizedBucket = Math.max(lastSummarizedBucket, lastComplete);
+        return summaries;
+    }
+
+    /**
+     * Adds the summary of the window that ends with the given bucket.
+     */
+    private void addSummary(List<WindowSummary> summaries, String window, long lastBucket) {
+        long firstBucket = lastBucket - bucketsPerWindow + 1;
+        List<HouseSummary> houseSummaries = new ArrayList<>();
+        for (int house = 0; house < houseIndexes.size(); house++) {
+            long[] totals = new long[COUNTERS];
+            String latestTitle = null;
+            for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                int slot = (int) Math.floorMod(bucket, (long) ringSize);
+                if (bucketNumbers[slot] != bucket) {
+                    continue;
+                }
+                int offset = (slot * maxHouses + house) * COUNTERS;
+                for (int counter = 0; counter < COUNTERS; counter++) {
+                    totals[counter] += counts[offset + counter];
+                }
+                // Buckets are visited oldest first, so the last title found is the latest in the window
+                String title = latestTitles[slot * maxHouses + house];
+                if (title != null) {
+                    latestTitle = title;
+                }
+            }
+            if (totals[ALIVE] + totals[DECEASED] + totals[OTHER_STATUS] > 0) {
+                houseSummaries.add(new HouseSummary(houses[house], totals[ALIVE], totals[DECEASED], totals[OTHER_STATUS], latestTitle));
+            }
+        }
+        if (!houseSummaries.isEmpty()) {
+            (WINDOW_TUMBLING.equals(window) ? tumblingSummaries : slidingSummaries).increment();
+            summaries.add(new WindowSummary(window, firstBucket * slideMs, (lastBucket + 1) * slideMs, houseSummaries));
+        }
+    }
+
+    // Must be called while holding this
+    private int slot(long bucket) {
+        int slot = (int) Math.floorMod(bucket, (long) ringSize);
+        if (bucketNumbers[slot] != bucket) {
+            // The slot still holds an older bucket, which has been summarized already
+            Arrays.fill(counts, slot * maxHouses * COUNTERS, (slot + 1) * maxHouses * COUNTERS, 0L);
+            Arrays.fill(latestTitles, slot * maxHouses, (slot + 1) * maxHouses, null);
+            bucketNumbers[slot] = bucket;
+        }
+        return slot;
+    }
+
+    // Must be called while holding this
+    private int houseIndex(String house) {
+        Integer index = houseIndexes.get(house);
+        if (index != null) {
+            return index;
+        }
+        // The last index is kept for the houses that do not fit
+        if (houseIndexes.size() >= maxHouses - 1) {
+            return houseIndexes.computeIfAbsent(OTHER_HOUSE, ignored -> register(OTHER_HOUSE));
+        }
+        return houseIndexes.computeIfAbsent(house, this::register);
+    }
+
+    private int register(String house) {
+        int index = houseIndexes.size();
+        houses[index] = house;
+        return index;
+    }
+}
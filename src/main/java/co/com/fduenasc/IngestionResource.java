@@ -0,0 +1,237 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.ExchangeBuilder;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.util.concurrent.ThreadPoolRejectedPolicy;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * IngestionResource is the HTTP entry point to the direct: routes of the exercises.
+ * A request carries either a single message (text/plain) or a batch with one message per line
+ * (application/x-ndjson). Each message is dispatched asynchronously from a dedicated bounded thread pool,
+ * which only runs a route up to its first asynchronous step and never waits for the outcome;
+ * the response is completed from the exchange callback, so neither the HTTP IO thread nor the pool
+ * is blocked while a message is in flight. The messages of a batch are sent concurrently.
+ * At most ingest.max-in-flight messages are processed at a time; requests that would go over
+ * the limit are rejected with 429 and a Retry-After header instead of being queued.
+ */
+@Path("/ingest")
+public class IngestionResource {
+
+    private static final Logger LOGGER = Logger.getLogger(IngestionResource.class);
+
+    static final String NDJSON = "application/x-ndjson";
+
+    // Route names accepted in the path and the endpoint each one feeds
+    private static final Map<String, String> ENDPOINTS = Map.of(
+            "start", "direct:start",
+            "uppercase", "direct:uppercase",
+            "choice", "direct:choice",
+            "dynamic-api", "direct:dynamic-api");
+
+    @ConfigProperty(name = "ingest.max-in-flight", defaultValue = "1000")
+    int maxInFlight;
+
+    // Larger batches are rejected with 413, since they could never get enough permits
+    @ConfigProperty(name = "ingest.max-batch-size", defaultValue = "1000")
+    int maxBatchSize;
+
+    @ConfigProperty(name = "ingest.retry-after-seconds", defaultValue = "1")
+    int retryAfterSeconds;
+
+    // Threads dispatching the messages to the routes, 0 means one per available core
+    @ConfigProperty(name = "ingest.threads", defaultValue = "0")
+    int threads;
+
+    @Inject
+    ProducerTemplate producerTemplate;
+
+    @Inject
+    CamelContext camelContext;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    private Semaphore inFlight;
+    private Counter rejected;
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        inFlight = new Semaphore(maxInFlight);
+        rejected = Counter.builder("ingest.rejected").register(routeMetrics.registry());
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        // Every queued task holds an in-flight permit, so the queue never fills up;
+        // the pool is shut down by Camel with the context
+        executor = camelContext.getExecutorServiceManager().newThreadPool(this, "ingest",
+                new ThreadPoolProfileBuilder("ingest")
+                        .poolSize(poolSize)
+                        .maxPoolSize(poolSize)
+                        .maxQueueSize(maxInFlight)
+                        .rejectedPolicy(ThreadPoolRejectedPolicy.Abort)
+                        .build());
+    }
+
+    /**
+     * Sends a single message to a route.
+     * @param route Route name: start, uppercase, choice or dynamic-api
+     * @param body Message body
+     * @return The body the route ended with
+     */
+    @POST
+    @Path("/{route}")
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.TEXT_PLAIN)
+    public Uni<Response> ingest(@PathParam("route") String route, String body) {
+        String endpoint = ENDPOINTS.get(route);
+        if (endpoint == null) {
+            return Uni.createFrom().item(Response.status(Response.Status.NOT_FOUND).build());
+        }
+        Response unavailable = acquire(1);
+        if (unavailable != null) {
+            return Uni.createFrom().item(unavailable);
+        }
+
+        CompletableFuture<Response> response = dispatch(endpoint, body)
+                .handle((exchange, error) -> {
+                    Throwable cause = error != null ? error : exchange.getException();
+                    if (cause != null) {
+                        // The cause may carry internal details, so it is only logged
+                        LOGGER.warn("Message to " + endpoint + " failed", cause);
+                        return Response.serverError().entity("Message could not be processed").build();
+                    }
+                    return Response.ok(exchange.getMessage().getBody(String.class)).build();
+                });
+        return Uni.createFrom().completionStage(response);
+    }
+
+    /**
+     * Sends a batch of messages to a route, one message per non-empty line.
+     * The messages are sent concurrently, so they may reach the route in any order.
+     * @param route Route name: start, uppercase, choice or dynamic-api
+     * @param body NDJSON batch
+     * @return Number of messages processed and failed
+     */
+    @POST
+    @Path("/{route}")
+    @Consumes(NDJSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<Response> ingestBatch(@PathParam("route") String route, String body) {
+        String endpoint = ENDPOINTS.get(route);
+        if (endpoint == null) {
+            return Uni.createFrom().item(Response.status(Response.Status.NOT_FOUND).build());
+        }
+        List<String> messages = new ArrayList<>();
+        body.lines().filter(line -> !line.isBlank()).forEach(messages::add);
+        if (messages.size() > maxBatchSize) {
+            return Uni.createFrom().item(Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE)
+                    .entity("Batches are limited to " + maxBatchSize + " messages")
+                    .build());
+        }
+        // The whole batch is admitted or rejected, so a client never has to resend part of it;
+        // each message then gives its permit back as soon as it completes
+        Response unavailable = acquire(messages.size());
+        if (unavailable != null) {
+            return Uni.createFrom().item(unavailable);
+        }
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(messages.size());
+        for (String message : messages) {
+            results.add(dispatch(endpoint, message).handle((exchange, error) -> {
+                Throwable cause = error != null ? error : exchange.getException();
+                if (cause != null) {
+                    LOGGER.debugf(cause, "Batch message to %s failed", endpoint);
+                }
+                return cause == null;
+            }));
+        }
+        CompletableFuture<Response> response = CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    long failed = results.stream().filter(result -> !result.join()).count();
+                    if (failed > 0) {
+                        LOGGER.warnf("%d of %d batch messages to %s failed", failed, messages.size(), endpoint);
+                    }
+                    return Response.ok(Map.of(
+                            "processed", messages.size() - failed,
+                            "failed", failed)).build();
+                });
+        return Uni.createFrom().completionStage(response);
+    }
+
+    /**
+     * Dispatches a message to a route from the ingestion pool and releases its permit once it completes.
+     * The pool thread hands the exchange to the route and moves on; the result is completed by the
+     * exchange callback, on whatever thread the route finishes.
+     * @param endpoint Endpoint of the route
+     * @param body Message body
+     * @return The completed exchange, which may hold the exception the route failed with
+     */
+    private CompletableFuture<Exchange> dispatch(String endpoint, String body) {
+        CompletableFuture<Exchange> result = new CompletableFuture<>();
+        Exchange exchange = ExchangeBuilder.anExchange(camelContext)
+                .withPattern(ExchangePattern.InOut)
+                .withBody(body)
+                .build();
+        try {
+            executor.execute(() -> {
+                try {
+                    producerTemplate.asyncCallback(endpoint, exchange, new SynchronizationAdapter() {
+                        @Override
+                        public void onDone(Exchange completed) {
+                            result.complete(completed);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // The endpoint could not be resolved or the message was not handed over
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result.whenComplete((ignored, error) -> inFlight.release());
+    }
+
+    /**
+     * Takes in-flight permits for the messages of a request.
+     * @param permits Number of messages
+     * @return null when the permits were taken, otherwise the response rejecting the request
+     */
+    private Response acquire(int permits) {
+        if (!camelContext.isStarted()) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        if (!inFlight.tryAcquire(permits)) {
+            rejected.increment(permits);
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After", retryAfterSeconds)
+                    .build();
+        }
+        return null;
+    }
+}
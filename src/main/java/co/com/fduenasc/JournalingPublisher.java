@@ -0,0 +1,274 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JournalingPublisher publishes messages to RabbitMQ through a local {@link MessageJournal},
+ * so they are not lost while the broker is unavailable.
+ * In fallback mode messages are sent directly while the broker is up and nothing is waiting in
+ * the journal, and appended to the journal otherwise, including when the broker does not confirm
+ * a direct send in time; in always mode every message goes through the journal, so a slow broker
+ * never holds up the route.
+ * A forwarder thread drains the journal in order and in batches, retrying until the broker accepts them.
+ * Delivery is at least once: a message forwarded right before a crash may be sent again on restart.
+ * The bean starts with the application, so a backlog left by a previous run is forwarded right away
+ * rather than on the first new message; the journal is only opened in the journal publisher mode.
+ */
+@Startup
+@ApplicationScoped
+public class JournalingPublisher implements Processor {
+
+    private static final Logger LOGGER = Logger.getLogger(JournalingPublisher.class);
+
+    private static final String PUBLISHER_MODE_JOURNAL = "journal";
+
+    // Journal modes
+    private static final String JOURNAL_MODE_ALWAYS = "always";
+
+    @ConfigProperty(name = "got.publisher.mode", defaultValue = "single")
+    String publisherMode;
+
+    @ConfigProperty(name = "got.publisher.exchange", defaultValue = "got-exchange")
+    String exchangeName;
+
+    @ConfigProperty(name = "got.publisher.routing-key", defaultValue = "character")
+    String routingKey;
+
+    // "fallback" journals only while the broker is unavailable, "always" journals every message
+    @ConfigProperty(name = "got.journal.mode", defaultValue = "fallback")
+    String journalMode;
+
+    @ConfigProperty(name = "got.journal.directory", defaultValue = "data/journal")
+    String directory;
+
+    @ConfigProperty(name = "got.journal.segment-size-bytes", defaultValue = "16777216")
+    int segmentSize;
+
+    // Disk usage is bounded by segment-size-bytes * max-segments
+    @ConfigProperty(name = "got.journal.max-segments", defaultValue = "32")
+    int maxSegments;
+
+    // always, interval or never
+    @ConfigProperty(name = "got.journal.fsync", defaultValue = "interval")
+    String fsync;
+
+    @ConfigProperty(name = "got.journal.fsync-interval-ms", defaultValue = "1000")
+    long fsyncIntervalMs;
+
+    @ConfigProperty(name = "got.journal.forward-batch-size", defaultValue = "500")
+    int forwardBatchSize;
+
+    @ConfigProperty(name = "got.journal.retry-interval-ms", defaultValue = "1000")
+    long retryIntervalMs;
+
+    @ConfigProperty(name = "got.publisher.confirm-timeout-ms", defaultValue = "5000")
+    long confirmTimeoutMs;
+
+    @Inject
+    ConnectionFactory connectionFactory;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    @Inject
+    PayloadCodec payloadCodec;
+
+    private MessageJournal journal;
+    private RabbitTemplate rabbitTemplate;
+    private ScheduledExecutorService scheduler;
+    private Thread forwarder;
+    private Counter journaled;
+    private Counter forwarded;
+    private Counter rejected;
+
+    private volatile boolean running;
+    // Cleared when a send fails, set again once the forwarder gets a batch through
+    private volatile boolean brokerAvailable = true;
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!PUBLISHER_MODE_JOURNAL.equalsIgnoreCase(publisherMode)) {
+            return;
+        }
+        MessageJournal.FsyncPolicy fsyncPolicy = MessageJournal.FsyncPolicy.valueOf(fsync.toUpperCase(Locale.ROOT));
+        journal = new MessageJournal(Path.of(directory), segmentSize, maxSegments, fsyncPolicy);
+        rabbitTemplate = createTemplate();
+
+        MeterRegistry registry = routeMetrics.registry();
+        Gauge.builder("got.journal.backlog.messages", journal, MessageJournal::backlogMessages).register(registry);
+        Gauge.builder("got.journal.backlog.bytes", journal, MessageJournal::backlogBytes).register(registry);
+        Gauge.builder("got.journal.segments", journal, MessageJournal::segmentCount).register(registry);
+        journaled = Counter.builder("got.journal.appended").register(registry);
+        forwarded = Counter.builder("got.journal.forwarded").register(registry);
+        rejected = Counter.builder("got.journal.rejected").register(registry);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "got-journal-fsync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncPolicy == MessageJournal.FsyncPolicy.INTERVAL) {
+            scheduler.scheduleAtFixedRate(journal::flush, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        running = true;
+        forwarder = new Thread(this::forward, "got-journal-forwarder");
+        forwarder.setDaemon(true);
+        forwarder.start();
+        LOGGER.info("Journal ready in " + directory + " with " + journal.backlogMessages() + " messages to forward");
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        running = false;
+        // Wakes the forwarder up from a poll, a confirm wait or a retry pause
+        forwarder.interrupt();
+        try {
+            forwarder.join(confirmTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.shutdown();
+        if (forwarder.isAlive()) {
+            // Unmapping the segments under the forwarder would crash it, the OS releases them on exit
+            LOGGER.warn("Journal forwarder did not stop in time, the journal is left open");
+            return;
+        }
+        journal.close();
+    }
+
+    // Replaced in tests by a template that records the messages instead of sending them
+    RabbitTemplate createTemplate() {
+        return new RabbitTemplate(connectionFactory);
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        if (journal == null) {
+            throw new IllegalStateException("The journal is only opened with got.publisher.mode=" + PUBLISHER_MODE_JOURNAL);
+        }
+        byte[] body = exchange.getIn().getMandatoryBody(byte[].class);
+        // Sending directly while older messages wait in the journal would overtake them
+        if (!JOURNAL_MODE_ALWAYS.equalsIgnoreCase(journalMode) && brokerAvailable && journal.backlogMessages() == 0) {
+            try {
+                // With publisher confirms this waits for the broker, so a dropped message is journaled
+                send(List.of(body));
+                return;
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                brokerAvailable = false;
+                LOGGER.warn("Broker unavailable, journaling messages until it is back: " + e.getMessage());
+            }
+        }
+        if (!journal.append(body)) {
+            rejected.increment();
+            throw new IllegalStateException("Journal is full (" + journal.backlogBytes() + " bytes waiting), message rejected");
+        }
+        journaled.increment();
+    }
+
+    /**
+     * @return Messages waiting in the journal
+     */
+    public long backlog() {
+        return journal == null ? 0 : journal.backlogMessages();
+    }
+
+    private void forward() {
+        while (running) {
+            MessageJournal.Batch batch;
+            try {
+                batch = journal.poll(forwardBatchSize, 200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch.messages().isEmpty()) {
+                continue;
+            }
+            try {
+                send(batch.messages());
+                journal.commit(batch);
+                forwarded.increment(batch.messages().size());
+                if (!brokerAvailable) {
+                    LOGGER.info("Broker available again, " + journal.backlogMessages() + " messages left in the journal");
+                    brokerAvailable = true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                brokerAvailable = false;
+                LOGGER.debugf("Could not forward %d journaled messages, retrying in %d ms: %s",
+                        batch.messages().size(), retryIntervalMs, e.getMessage());
+                try {
+                    Thread.sleep(retryIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a batch on a single channel. With publisher confirms it only returns once the broker has confirmed every message.
+     */
+    private void send(List<byte[]> messages) throws Exception {
+        if (!connectionFactory.isPublisherConfirms()) {
+            rabbitTemplate.invoke(operations -> {
+                for (byte[] body : messages) {
+                    operations.send(exchangeName, routingKey, toMessage(body));
+                }
+                return null;
+            });
+            return;
+        }
+        List<CorrelationData> confirms = new ArrayList<>(messages.size());
+        for (byte[] body : messages) {
+            CorrelationData correlation = new CorrelationData();
+            rabbitTemplate.send(exchangeName, routingKey, toMessage(body), correlation);
+            confirms.add(correlation);
+        }
+        for (CorrelationData correlation : confirms) {
+            CorrelationData.Confirm confirm = correlation.getFuture().get(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!confirm.isAck()) {
+                throw new AmqpException("Message was not confirmed by the broker: " + confirm.getReason());
+            }
+        }
+    }
+
+    private Message toMessage(byte[] body) {
+        return new Message(body, payloadCodec.messageProperties(body));
+    }
+}
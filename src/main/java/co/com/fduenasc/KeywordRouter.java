@@ -0,0 +1,206 @@
+package co.com.fduenasc;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * KeywordRouter is a Processor that picks a destination for a message based on the keywords it contains.
+ * All keyword rules are compiled into a single Aho-Corasick automaton over UTF-8 bytes, so the body
+ * is scanned once no matter how many rules there are. When several keywords are found, the rule
+ * declared first wins, the same as a chain of choice() branches.
+ * The chosen destination and keyword are stored in the {@link #DESTINATION_HEADER} and
+ * {@link #KEYWORD_HEADER} headers.
+ */
+public final class KeywordRouter implements Processor {
+
+    public static final String DESTINATION_HEADER = "KeywordRouterDestination";
+    public static final String KEYWORD_HEADER = "KeywordRouterKeyword";
+    public static final String DEFAULT_KEYWORD = "default";
+
+    private static final int ALPHABET_SIZE = 256;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private final String[] keywords;
+    private final String[] destinations;
+    private final String defaultDestination;
+
+    // Automaton: transitions[state * 256 + byte] is the next state,
+    // matches[state] is the lowest rule index recognised in that state
+    private final int[] transitions;
+    private final int[] matches;
+
+    private KeywordRouter(String[] keywords, String[] destinations, String defaultDestination) {
+        this.keywords = keywords;
+        this.destinations = destinations;
+        this.defaultDestination = defaultDestination;
+
+        // 1. Build the trie of the keywords
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        trie.add(newState());
+        outputs.add(NO_MATCH);
+        for (int rule = 0; rule < keywords.length; rule++) {
+            int state = 0;
+            for (byte b : keywords[rule].getBytes(StandardCharsets.UTF_8)) {
+                int symbol = b & 0xFF;
+                if (trie.get(state)[symbol] < 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(newState());
+                    outputs.add(NO_MATCH);
+                }
+                state = trie.get(state)[symbol];
+            }
+            outputs.set(state, Math.min(outputs.get(state), rule));
+        }
+
+        // 2. Turn it into a DFA following the failure links in breadth-first order
+        int stateCount = trie.size();
+        this.transitions = new int[stateCount * ALPHABET_SIZE];
+        this.matches = new int[stateCount];
+        int[] failure = new int[stateCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+
+        matches[0] = outputs.get(0);
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            int next = trie.get(0)[symbol];
+            if (next < 0) {
+                transitions[symbol] = 0;
+            } else {
+                transitions[symbol] = next;
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            matches[state] = Math.min(outputs.get(state), matches[failure[state]]);
+            for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                int next = trie.get(state)[symbol];
+                int fallback = transitions[failure[state] * ALPHABET_SIZE + symbol];
+                if (next < 0) {
+                    transitions[state * ALPHABET_SIZE + symbol] = fallback;
+                } else {
+                    transitions[state * ALPHABET_SIZE + symbol] = next;
+                    failure[next] = fallback;
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles routing rules written as {@code keyword=destination}, in priority order.
+     * @param rules Rules, the first matching one wins
+     * @param defaultDestination Destination used when no keyword is found
+     * @return The compiled router
+     */
+    public static KeywordRouter compile(List<String> rules, String defaultDestination) {
+        String[] keywords = new String[rules.size()];
+        String[] destinations = new String[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            String rule = rules.get(i).trim();
+            int separator = rule.indexOf('=');
+            if (separator <= 0 || separator == rule.length() - 1) {
+                throw new IllegalArgumentException("Invalid routing rule, expected keyword=destination: " + rule);
+            }
+            keywords[i] = rule.substring(0, separator).trim();
+            destinations[i] = rule.substring(separator + 1).trim();
+        }
+        return new KeywordRouter(keywords, destinations, defaultDestination);
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        Object body = exchange.getIn().getBody();
+        int rule;
+        if (body instanceof byte[] bytes) {
+            rule = match(bytes);
+        } else if (body instanceof String text) {
+            rule = match(text);
+        } else {
+            String text = exchange.getIn().getBody(String.class);
+            rule = text == null ? NO_MATCH : match(text);
+        }
+
+        if (rule == NO_MATCH) {
+            exchange.getIn().setHeader(DESTINATION_HEADER, defaultDestination);
+            exchange.getIn().setHeader(KEYWORD_HEADER, DEFAULT_KEYWORD);
+        } else {
+            exchange.getIn().setHeader(DESTINATION_HEADER, destinations[rule]);
+            exchange.getIn().setHeader(KEYWORD_HEADER, keywords[rule]);
+        }
+    }
+
+    /**
+     * Finds the highest priority rule whose keyword appears in the bytes.
+     * @param body UTF-8 encoded body
+     * @return Index of the rule, or {@link Integer#MAX_VALUE} when no keyword is found
+     */
+    int match(byte[] body) {
+        int state = 0;
+        int best = NO_MATCH;
+        for (byte b : body) {
+            state = transitions[state * ALPHABET_SIZE + (b & 0xFF)];
+            if (matches[state] < best) {
+                best = matches[state];
+                if (best == 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the highest priority rule whose keyword appears in the text.
+     * The characters are fed to the automaton as UTF-8 bytes without encoding the whole string.
+     * @param body Text body
+     * @return Index of the rule, or {@link Integer#MAX_VALUE} when no keyword is found
+     */
+    int match(String body) {
+        int state = 0;
+        int best = NO_MATCH;
+        int length = body.length();
+        for (int i = 0; i < length && best != 0; i++) {
+            char c = body.charAt(i);
+            if (c < 0x80) {
+                state = step(state, c);
+            } else if (c < 0x800) {
+                state = step(state, 0xC0 | (c >> 6));
+                state = step(state, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(body.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, body.charAt(++i));
+                state = step(state, 0xF0 | (codePoint >> 18));
+                state = step(state, 0x80 | ((codePoint >> 12) & 0x3F));
+                state = step(state, 0x80 | ((codePoint >> 6) & 0x3F));
+                state = step(state, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are encoded as '?', like String.getBytes() does
+                state = step(state, '?');
+            } else {
+                state = step(state, 0xE0 | (c >> 12));
+                state = step(state, 0x80 | ((c >> 6) & 0x3F));
+                state = step(state, 0x80 | (c & 0x3F));
+            }
+            best = Math.min(best, matches[state]);
+        }
+        return best;
+    }
+
+    private int step(int state, int symbol) {
+        return transitions[state * ALPHABET_SIZE + symbol];
+    }
+
+    private static int[] newState() {
+        int[] children = new int[ALPHABET_SIZE];
+        Arrays.fill(children, -1);
+        return children;
+    }
+}
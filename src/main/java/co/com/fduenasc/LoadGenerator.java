@@ -0,0 +1,138 @@
+package co.com.fduenasc;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.camel.ProducerTemplate;
+import org.jboss.logging.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator that sends messages to a Camel endpoint at a target rate.
+ * Every message has an intended start time taken from the rate profile and is sent on its own
+ * virtual thread, whether or not earlier messages have finished. Latency is measured from the
+ * intended start time, so delays caused by a saturated route are recorded instead of hidden
+ * (no coordinated omission).
+ */
+class LoadGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger(LoadGenerator.class);
+
+    /**
+     * Shape of the target rate over the run.
+     * constant: startRate for the whole run, step: equal steps from startRate to targetRate,
+     * ramp: linear increase from startRate to targetRate.
+     */
+    enum Profile {
+        CONSTANT, STEP, RAMP
+    }
+
+    private final ProducerTemplate producerTemplate;
+    private final String endpoint;
+    private final Object body;
+    private final Profile profile;
+    private final double startRate;
+    private final double targetRate;
+    private final int steps;
+    private final long durationNanos;
+
+    private final Recorder recorder = new Recorder(3);
+    private final LongAdder failures = new LongAdder();
+
+    LoadGenerator(ProducerTemplate producerTemplate, String endpoint, Object body, Profile profile,
+                  double startRate, double targetRate, int steps, long durationSeconds) {
+        this.producerTemplate = producerTemplate;
+        this.endpoint = endpoint;
+        this.body = body;
+        this.profile = profile;
+        this.startRate = startRate;
+        this.targetRate = targetRate;
+        this.steps = Math.max(steps, 1);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+    }
+
+    /**
+     * Runs the load for the configured duration, waits for the messages in flight
+     * and logs the latency percentiles.
+     */
+    void run() {
+        LOGGER.info("Starting " + profile + " load on " + endpoint + " from " + startRate + " to " + targetRate
+                + " msg/s for " + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + " s");
+        long sent = 0;
+        long start = System.nanoTime();
+        long intended = start;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (intended - start < durationNanos) {
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                long scheduled = intended;
+                executor.execute(() -> send(scheduled));
+                sent++;
+                // Never below 1 msg/s, so a profile starting at 0 does not stall the run
+                intended += (long) (1_000_000_000L / Math.max(rateAt(intended - start), 1.0));
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        report(sent, elapsed);
+    }
+
+    /**
+     * @param elapsed Nanoseconds since the start of the run
+     * @return Target rate in messages per second at that point of the run
+     */
+    double rateAt(long elapsed) {
+        double progress = Math.min((double) elapsed / durationNanos, 1.0);
+        return switch (profile) {
+            case CONSTANT -> startRate;
+            case RAMP -> startRate + (targetRate - startRate) * progress;
+            case STEP -> {
+                int step = Math.min((int) (progress * steps), steps - 1);
+                yield steps == 1 ? startRate : startRate + (targetRate - startRate) * step / (steps - 1);
+            }
+        };
+    }
+
+    private void send(long intendedStart) {
+        try {
+            producerTemplate.sendBody(endpoint, body);
+        } catch (Exception e) {
+            failures.increment();
+        } finally {
+            recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+        }
+    }
+
+    private void report(long sent, long elapsedNanos) {
+        Histogram histogram = recorder.getIntervalHistogram();
+        double seconds = elapsedNanos / 1_000_000_000.0;
+
+        ByteArrayOutputStream distribution = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(distribution, true, StandardCharsets.UTF_8)) {
+            // Values are recorded in microseconds and printed in milliseconds
+            histogram.outputPercentileDistribution(out, 5, 1000.0);
+        }
+
+        LOGGER.info(String.format("Load run on %s finished: %d messages in %.1f s (%.1f msg/s), %d failed%n"
+                        + "Latency (ms): p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f p99.99=%.3f max=%.3f mean=%.3f%n%s",
+                endpoint, sent, seconds, sent / seconds, failures.sum(),
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getValueAtPercentile(99.99) / 1000.0,
+                histogram.getMaxValue() / 1000.0,
+                histogram.getMean() / 1000.0,
+                distribution.toString(StandardCharsets.UTF_8)));
+    }
+}
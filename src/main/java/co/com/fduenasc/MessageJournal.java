@@ -0,0 +1,422 @@
+package co.com.fduenasc;
+
+import sun.misc.Unsafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of messages, stored in fixed-size memory-mapped segment files.
+ * Every record is written as [length + 1][CRC32C][payload], the length last, so a record cut short
+ * by a crash is never read back; the length is stored plus one so an empty message is told apart from
+ * the zeroes that follow the last record. Messages are read in the order they were appended and removed
+ * by {@link #commit(Batch)}; fully read segments are unmapped and deleted, and the read position is kept
+ * in a checkpoint file, so a restarted journal continues where it left off.
+ * Disk usage is bounded by segment size times the maximum number of segments: once full,
+ * {@link #append(byte[])} refuses new messages.
+ * All methods are thread safe.
+ */
+final class MessageJournal implements Closeable {
+
+    /**
+     * When appended records are forced to disk.
+     * always: after every append, interval: when {@link #flush()} is called, for every segment written
+     * since the previous call, never: left to the OS.
+     * Memory-mapped writes survive a crash of the process in every mode; the policy only matters
+     * for crashes of the machine.
+     */
+    enum FsyncPolicy {
+        ALWAYS, INTERVAL, NEVER
+    }
+
+    private static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    // Releases a mapping right away instead of when the buffer is garbage collected
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (Unsafe) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final FsyncPolicy fsyncPolicy;
+
+    // Segments by index, the last one is the one being written
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    // Position of the next record to read
+    private long readSegment;
+    private int readOffset;
+
+    // First segment written since the last flush, in interval mode
+    private long unflushedSegment;
+
+    // Records and bytes not committed yet
+    private long backlogMessages;
+    private long backlogBytes;
+
+    /**
+     * A run of records read from the journal, to be passed to {@link #commit(Batch)} once they are forwarded.
+     * @param messages Payloads in journal order
+     * @param bytes Size of the records, headers included
+     * @param endSegment Segment of the record that follows the batch
+     * @param endOffset Offset of the record that follows the batch
+     */
+    record Batch(List<byte[]> messages, long bytes, long endSegment, int endOffset) {
+    }
+
+    /**
+     * Opens the journal in the directory, recovering the records left by a previous run.
+     * @param directory Directory of the segment files, created if needed
+     * @param segmentSize Size of each segment file in bytes
+     * @param maxSegments Segments kept at most, which bounds disk usage
+     * @param fsyncPolicy When appended records are forced to disk
+     */
+    MessageJournal(Path directory, int segmentSize, int maxSegments, FsyncPolicy fsyncPolicy) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be greater than " + HEADER_SIZE + " bytes");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(maxSegments, 1);
+        this.fsyncPolicy = fsyncPolicy;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * Appends a message at the end of the journal.
+     * @param payload Message body
+     * @return false when the journal is full
+     * @throws IllegalArgumentException when the message does not fit in a segment
+     */
+    synchronized boolean append(byte[] payload) throws IOException {
+        int size = HEADER_SIZE + payload.length;
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("Message of " + payload.length + " bytes does not fit in a journal segment");
+        }
+        if (segments.isEmpty()) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        Segment segment = segments.lastEntry().getValue();
+        if (segmentSize - segment.writePosition < size) {
+            segment = roll(segment);
+            if (segment == null) {
+                return false;
+            }
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        int position = segment.writePosition;
+        segment.buffer.put(position + HEADER_SIZE, payload);
+        segment.buffer.putInt(position + 4, (int) crc.getValue());
+        // Written last: a record whose length is still 0 does not exist yet
+        segment.buffer.putInt(position, payload.length + 1);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            segment.buffer.force(position, size);
+        }
+        segment.writePosition += size;
+
+        backlogMessages++;
+        backlogBytes += size;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Reads the oldest messages without removing them, waiting for one to be appended if the journal is empty.
+     * @param maxMessages Messages read at most
+     * @param timeout How long to wait for a message
+     * @param unit Unit of the timeout
+     * @return The messages read, possibly none
+     */
+    synchronized Batch poll(int maxMessages, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (backlogMessages == 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return new Batch(List.of(), 0, readSegment, readOffset);
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        if (segments.isEmpty()) {
+            throw new IllegalStateException("Journal is closed");
+        }
+
+        List<byte[]> messages = new ArrayList<>(Math.min(maxMessages, (int) Math.min(backlogMessages, Integer.MAX_VALUE)));
+        long bytes = 0;
+        long segmentIndex = readSegment;
+        int offset = readOffset;
+        // Never read past the records appended since the journal was opened
+        while (messages.size() < maxMessages && messages.size() < backlogMessages) {
+            Segment segment = segments.get(segmentIndex);
+            int length = segment.lengthAt(offset);
+            if (length < 0) {
+                Long next = segments.higherKey(segmentIndex);
+                if (next == null) {
+                    break;
+                }
+                segmentIndex = next;
+                offset = 0;
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer.get(offset + HEADER_SIZE, payload);
+            messages.add(payload);
+            offset += HEADER_SIZE + length;
+            bytes += HEADER_SIZE + length;
+        }
+        return new Batch(messages, bytes, segmentIndex, offset);
+    }
+
+    /**
+     * Removes the messages of a batch, which must be the last one returned by {@link #poll}.
+     * Segments that have been read completely are deleted.
+     * @param batch Batch that has been forwarded
+     */
+    synchronized void commit(Batch batch) throws IOException {
+        if (batch.messages().isEmpty()) {
+            return;
+        }
+        readSegment = batch.endSegment();
+        readOffset = batch.endOffset();
+        backlogMessages -= batch.messages().size();
+        backlogBytes -= batch.bytes();
+        deleteReadSegments();
+        writeCheckpoint();
+    }
+
+    /**
+     * Forces the segments written since the previous flush to disk, including the ones
+     * the writer has already rolled past.
+     */
+    synchronized void flush() {
+        if (fsyncPolicy == FsyncPolicy.NEVER || segments.isEmpty()) {
+            return;
+        }
+        // Segments deleted in the meantime were read to the end, so there is nothing left to save in them
+        for (Segment segment : segments.tailMap(unflushedSegment, true).values()) {
+            segment.buffer.force();
+        }
+        unflushedSegment = segments.lastKey();
+    }
+
+    /**
+     * @return Messages appended and not committed yet
+     */
+    synchronized long backlogMessages() {
+        return backlogMessages;
+    }
+
+    /**
+     * @return Size of the messages appended and not committed yet, headers included
+     */
+    synchronized long backlogBytes() {
+        return backlogBytes;
+    }
+
+    /**
+     * @return Segment files on disk
+     */
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                segment.buffer.force();
+            }
+            segment.release();
+        }
+        segments.clear();
+    }
+
+    /**
+     * Maps the segment files left by a previous run, finds the end of the last complete record
+     * of each one and counts the messages after the checkpoint.
+     */
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(MessageJournal::isSegment).sorted().toList()) {
+                String name = file.getFileName().toString();
+                long index = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                openSegment(index);
+            }
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+        }
+
+        readSegment = segments.firstKey();
+        readOffset = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            long savedSegment = saved.getLong();
+            int savedOffset = saved.getInt();
+            // A checkpoint older than the first segment means that segment was deleted before it was written
+            if (savedSegment >= readSegment && segments.containsKey(savedSegment)) {
+                readSegment = savedSegment;
+                readOffset = savedOffset;
+            }
+        }
+
+        for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+            Segment segment = entry.getValue();
+            int offset = 0;
+            while (true) {
+                int length = segment.lengthAt(offset);
+                if (length < 0 || !segment.isValid(offset, length)) {
+                    break;
+                }
+                offset += HEADER_SIZE + length;
+                if (entry.getKey() > readSegment || (entry.getKey() == readSegment && offset > readOffset)) {
+                    backlogMessages++;
+                    backlogBytes += HEADER_SIZE + length;
+                }
+            }
+            segment.writePosition = offset;
+            // Clear a record cut short by a crash, so it is not mistaken for the end of the segment later
+            if (offset + HEADER_SIZE <= segmentSize) {
+                segment.buffer.putInt(offset, 0);
+            }
+        }
+    }
+
+    /**
+     * Starts a new segment once the current one is full, unless the journal is full.
+     * @return The new segment, or null when there is no room for it
+     */
+    private Segment roll(Segment current) throws IOException {
+        boolean drained = backlogMessages == 0;
+        if (!drained && segments.size() >= maxSegments) {
+            // Segments read to the end are still on disk when the reader has not moved past them
+            while (readSegment < current.index && segments.get(readSegment).lengthAt(readOffset) < 0) {
+                readSegment = segments.higherKey(readSegment);
+                readOffset = 0;
+            }
+            deleteReadSegments();
+            writeCheckpoint();
+            if (segments.size() >= maxSegments) {
+                return null;
+            }
+        }
+        Segment next = openSegment(current.index + 1);
+        if (drained) {
+            // Everything has been read, so the reader moves on to the new segment and the others can go
+            readSegment = next.index;
+            readOffset = 0;
+            deleteReadSegments();
+            writeCheckpoint();
+        }
+        return next;
+    }
+
+    private void deleteReadSegments() throws IOException {
+        while (!segments.isEmpty() && segments.firstKey() < readSegment) {
+            // Removed from the map first, so nothing can reach the buffer once it is unmapped
+            Segment consumed = segments.pollFirstEntry().getValue();
+            consumed.release();
+            Files.deleteIfExists(consumed.path);
+        }
+    }
+
+    private Segment openSegment(long index) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        Segment segment = new Segment(index, path, channel, buffer);
+        segments.put(index, segment);
+        return segment;
+    }
+
+    private void writeCheckpoint() throws IOException {
+        ByteBuffer position = ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(readSegment).putInt(readOffset).flip();
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(position);
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                channel.force(false);
+            }
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private final class Segment {
+
+        private final long index;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        private Segment(long index, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return Payload length of the record at the offset, -1 when there is none
+         */
+        private int lengthAt(int offset) {
+            if (offset + HEADER_SIZE > segmentSize) {
+                return -1;
+            }
+            int stored = buffer.getInt(offset);
+            return stored > 0 && stored - 1 <= segmentSize - HEADER_SIZE - offset ? stored - 1 : -1;
+        }
+
+        private boolean isValid(int offset, int length) {
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(offset + HEADER_SIZE, length));
+            return (int) crc.getValue() == buffer.getInt(offset + 4);
+        }
+
+        /**
+         * Closes the file and unmaps it, so it can be deleted at once on every OS and its address space
+         * is given back. The segment must no longer be reachable: any access to the buffer afterwards
+         * would crash the JVM.
+         */
+        private void release() throws IOException {
+            channel.close();
+            UNSAFE.invokeCleaner(buffer);
+        }
+    }
+}
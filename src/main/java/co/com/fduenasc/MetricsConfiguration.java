@@ -0,0 +1,32 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Singleton;
+
+/**
+ * Configuration class for the Micrometer metrics exposed in Prometheus format at /q/metrics.
+ * Every timer, including the per-route timers of the Camel route policy, publishes
+ * its p50, p99 and p999 latency.
+ */
+public class MetricsConfiguration {
+
+    @Produces
+    @Singleton
+    public MeterFilter latencyPercentiles() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() != Meter.Type.TIMER) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentiles(0.5, 0.99, 0.999)
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+}
@@ -0,0 +1,263 @@
+package co.com.fduenasc;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * PayloadCodec encodes the messages sent to RabbitMQ in the format set by got.payload.format
+ * (JSON text, or the binary Smile and CBOR formats, which do not repeat field names as text),
+ * optionally compressed with LZ4 when they are larger than got.payload.compression-threshold-bytes.
+ * Encoded payloads describe themselves: Smile and CBOR are written with their format header and
+ * compressed payloads are LZ4 frames, so they can be decoded without any message header and
+ * consumers keep working while producers use different formats.
+ * The Content-Type header is set as well, for other consumers, and compressed payloads carry an
+ * x-compression header; the AMQP content encoding is left alone, since Spring AMQP reads it as the
+ * charset of text payloads.
+ */
+@ApplicationScoped
+public class PayloadCodec implements Processor {
+
+    /** Message header naming the compression of the payload, set to lz4 on compressed payloads. */
+    static final String COMPRESSION_HEADER = "x-compression";
+
+    private static final String COMPRESSION_LZ4 = "lz4";
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    // First bytes of an LZ4 frame, the magic number 0x184D2204 in little endian
+    private static final byte[] LZ4_MAGIC = {0x04, 0x22, 0x4D, 0x18};
+
+    /**
+     * Payload formats, each with the header its payloads start with.
+     */
+    enum Format {
+        JSON(MessageProperties.CONTENT_TYPE_JSON, new JsonFactory(), new byte[0]),
+        // Field names and short string values repeated within a payload are written as back-references
+        SMILE("application/x-jackson-smile", SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build(), new byte[]{':', ')', '\n'}),
+        // Starts with the self-describe tag 55799
+        CBOR("application/cbor", CBORFactory.builder()
+                .enable(CBORGenerator.Feature.WRITE_TYPE_HEADER)
+                .build(), new byte[]{(byte) 0xD9, (byte) 0xD9, (byte) 0xF7});
+
+        private final String contentType;
+        private final ObjectMapper mapper;
+        private final byte[] header;
+
+        Format(String contentType, JsonFactory factory, byte[] header) {
+            this.contentType = contentType;
+            this.mapper = new ObjectMapper(factory).disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+            this.header = header;
+        }
+
+        String contentType() {
+            return contentType;
+        }
+
+        ObjectMapper mapper() {
+            return mapper;
+        }
+    }
+
+    // json, smile or cbor
+    @ConfigProperty(name = "got.payload.format", defaultValue = "json")
+    String format;
+
+    // none or lz4
+    @ConfigProperty(name = "got.payload.compression", defaultValue = "none")
+    String compression;
+
+    // Smaller payloads are sent uncompressed, since the LZ4 frame would make them larger
+    @ConfigProperty(name = "got.payload.compression-threshold-bytes", defaultValue = "1024")
+    int compressionThreshold;
+
+    private Format writeFormat;
+    private boolean compressed;
+
+    @PostConstruct
+    void init() {
+        writeFormat = Format.valueOf(format.toUpperCase(Locale.ROOT));
+        compressed = COMPRESSION_LZ4.equalsIgnoreCase(compression);
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        Object body = exchange.getIn().getBody();
+        if (body instanceof Collection<?> items) {
+            List<byte[]> payloads = new ArrayList<>(items.size());
+            for (Object item : items) {
+                payloads.add(encode(item));
+            }
+            exchange.getIn().setBody(payloads);
+        } else {
+            byte[] payload = encode(body);
+            exchange.getIn().setBody(payload);
+            setHeaders(exchange, payload);
+        }
+    }
+
+    /**
+     * @return true when payloads are plain JSON text, as marshal().json() writes them
+     */
+    public boolean isPlainJson() {
+        return writeFormat == Format.JSON && !compressed;
+    }
+
+    /**
+     * @return Mapper of the configured format
+     */
+    ObjectMapper mapper() {
+        return writeFormat.mapper();
+    }
+
+    /**
+     * @return Content type of the configured format
+     */
+    public String contentType() {
+        return writeFormat.contentType();
+    }
+
+    /**
+     * Encodes a value in the configured format and compresses it when enabled.
+     * @param value Value to encode
+     * @return Payload
+     */
+    public byte[] encode(Object value) throws IOException {
+        return compress(writeFormat.mapper().writeValueAsBytes(value));
+    }
+
+    /**
+     * Compresses an encoded payload when compression is enabled and the payload reaches the threshold.
+     * @param encoded Payload in the configured format
+     * @return The payload, as an LZ4 frame when compressed
+     */
+    public byte[] compress(byte[] encoded) throws IOException {
+        if (!compressed || encoded.length < compressionThreshold) {
+            return encoded;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(INITIAL_BUFFER_SIZE, encoded.length / 2));
+        try (LZ4FrameOutputStream lz4 = new LZ4FrameOutputStream(buffer, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB)) {
+            lz4.write(encoded);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Decodes a payload in any of the supported formats, compressed or not.
+     * @param payload Payload
+     * @param type Type to decode into
+     * @return The decoded value
+     */
+    public <T> T decode(byte[] payload, Class<T> type) throws IOException {
+        byte[] encoded = decompress(payload);
+        return detect(encoded).mapper().readValue(encoded, type);
+    }
+
+    /**
+     * Creates a streaming parser over a payload in any of the supported formats, compressed or not.
+     * @param payload Payload
+     * @return Parser for the payload format
+     */
+    public JsonParser createParser(byte[] payload) throws IOException {
+        byte[] encoded = decompress(payload);
+        return detect(encoded).mapper().createParser(encoded);
+    }
+
+    /**
+     * Creates a processor that decodes the message body.
+     * @param type Type to decode into
+     * @return Processor replacing the payload with the decoded value
+     */
+    public Processor decoder(Class<?> type) {
+        return exchange -> exchange.getIn().setBody(decode(exchange.getIn().getMandatoryBody(byte[].class), type));
+    }
+
+    /**
+     * Builds the AMQP properties describing a payload.
+     * @param payload Payload
+     * @return Properties with the content type and, for compressed payloads, the compression header
+     */
+    MessageProperties messageProperties(byte[] payload) {
+        MessageProperties properties = new MessageProperties();
+        if (isCompressed(payload)) {
+            // Only this codec compresses payloads, so they are in the configured format
+            properties.setContentType(writeFormat.contentType());
+            properties.setHeader(COMPRESSION_HEADER, COMPRESSION_LZ4);
+        } else {
+            properties.setContentType(detect(payload).contentType());
+        }
+        return properties;
+    }
+
+    /**
+     * Sets the headers describing a payload written by this codec on the exchange.
+     * @param exchange Exchange whose body is the payload
+     * @param payload Payload
+     */
+    void setHeaders(Exchange exchange, byte[] payload) {
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, writeFormat.contentType());
+        if (isCompressed(payload)) {
+            exchange.getIn().setHeader(COMPRESSION_HEADER, COMPRESSION_LZ4);
+        }
+    }
+
+    /**
+     * @param payload Payload
+     * @return The payload format, told by its first bytes
+     */
+    static Format detect(byte[] payload) {
+        if (startsWith(payload, Format.SMILE.header)) {
+            return Format.SMILE;
+        }
+        if (startsWith(payload, Format.CBOR.header)) {
+            return Format.CBOR;
+        }
+        return Format.JSON;
+    }
+
+    static boolean isCompressed(byte[] payload) {
+        return startsWith(payload, LZ4_MAGIC);
+    }
+
+    private static byte[] decompress(byte[] payload) throws IOException {
+        if (!isCompressed(payload)) {
+            return payload;
+        }
+        try (LZ4FrameInputStream lz4 = new LZ4FrameInputStream(new ByteArrayInputStream(payload))) {
+            return lz4.readAllBytes();
+        }
+    }
+
+    private static boolean startsWith(byte[] payload, byte[] prefix) {
+        if (prefix.length == 0 || payload.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (payload[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
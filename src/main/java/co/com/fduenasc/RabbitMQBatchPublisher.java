@@ -0,0 +1,321 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.support.AsyncCallbackToCompletableFutureAdapter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RabbitMQBatchPublisher publishes messages to RabbitMQ in batches, without waiting
+ * for the broker after every message.
+ * Messages are buffered until the batch size is reached or the linger time expires,
+ * then sent back to back; each one is tracked with an asynchronous publisher confirm
+ * and nacked (or timed out) messages are retried with an exponential backoff before the original exchange fails.
+ * Once the publisher is stopping, messages that would be retried or enqueued fail instead.
+ * The time from enqueue to broker confirm is recorded in the {@link #PUBLISH_LATENCY_TIMER} timer.
+ */
+@ApplicationScoped
+public class RabbitMQBatchPublisher implements AsyncProcessor {
+
+    private static final Logger LOGGER = Logger.getLogger(RabbitMQBatchPublisher.class);
+
+    static final String PUBLISH_LATENCY_TIMER = "got.publish.latency";
+
+    @ConfigProperty(name = "got.publisher.exchange", defaultValue = "got-exchange")
+    String exchangeName;
+
+    @ConfigProperty(name = "got.publisher.routing-key", defaultValue = "character")
+    String routingKey;
+
+    @ConfigProperty(name = "got.publisher.batch-size", defaultValue = "500")
+    int batchSize;
+
+    @ConfigProperty(name = "got.publisher.linger-ms", defaultValue = "5")
+    long lingerMs;
+
+    @ConfigProperty(name = "got.publisher.max-retries", defaultValue = "3")
+    int maxRetries;
+
+    // Wait before the first retry, doubled on every further attempt
+    @ConfigProperty(name = "got.publisher.retry-backoff-ms", defaultValue = "100")
+    long retryBackoffMs;
+
+    @ConfigProperty(name = "got.publisher.confirm-timeout-ms", defaultValue = "5000")
+    long confirmTimeoutMs;
+
+    @Inject
+    ConnectionFactory connectionFactory;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    @Inject
+    PayloadCodec payloadCodec;
+
+    private final Object lock = new Object();
+
+    // Messages waiting for the next flush, guarded by lock
+    private List<PendingMessage> buffer = new ArrayList<>();
+    private ScheduledFuture<?> lingerTask;
+
+    private RabbitTemplate rabbitTemplate;
+    private ScheduledExecutorService scheduler;
+    private Timer publishLatency;
+    private Counter publishFailures;
+    private volatile boolean stopping;
+
+    @PostConstruct
+    void init() {
+        if (!connectionFactory.isPublisherConfirms()) {
+            throw new IllegalStateException("Batch publishing requires publisher confirms, set rabbitmq.publisher-confirms=true");
+        }
+        rabbitTemplate = createTemplate();
+        publishLatency = routeMetrics.timer(PUBLISH_LATENCY_TIMER, "mode", "batch");
+        publishFailures = Counter.builder("got.publish.failures").tag("mode", "batch").register(routeMetrics.registry());
+        // A single thread sends the batches so the publish order is kept between flushes
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "got-batch-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info("Batch publisher ready: batchSize=" + batchSize + ", lingerMs=" + lingerMs + ", maxRetries=" + maxRetries);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stopping = true;
+        List<PendingMessage> remaining;
+        synchronized (lock) {
+            remaining = drainBuffer();
+        }
+        if (!remaining.isEmpty()) {
+            scheduler.execute(() -> send(remaining));
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(confirmTimeoutMs, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Batch publisher did not flush all pending messages before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Replaced in tests by a template that records the messages instead of sending them
+    RabbitTemplate createTemplate() {
+        return new RabbitTemplate(connectionFactory);
+    }
+
+    /**
+     * Publishes a single payload.
+     * @param body Serialized message body
+     * @return Future completed once the broker confirms the message, or failed after the retries run out
+     */
+    public CompletableFuture<Void> publish(byte[] body) {
+        PendingMessage message = new PendingMessage(body, payloadCodec.messageProperties(body));
+        enqueue(message);
+        return message.result;
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        CompletableFuture<Void> published;
+        try {
+            published = publishBody(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+        // The exchange only continues when every message it carried has been confirmed
+        published.whenComplete((ignored, error) -> {
+            if (error != null) {
+                exchange.setException(error);
+            }
+            callback.done(false);
+        });
+        return false;
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        try {
+            publishBody(exchange).get();
+        } catch (ExecutionException e) {
+            exchange.setException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Exchange> processAsync(Exchange exchange) {
+        AsyncCallbackToCompletableFutureAdapter<Exchange> callback = new AsyncCallbackToCompletableFutureAdapter<>(exchange);
+        process(exchange, callback);
+        return callback.getFuture();
+    }
+
+    private CompletableFuture<Void> publishBody(Exchange exchange) throws IOException {
+        Object body = exchange.getIn().getBody();
+        Collection<?> items = null;
+        if (body instanceof Collection<?> collection) {
+            items = collection;
+        } else if (body instanceof Object[] array) {
+            items = Arrays.asList(array);
+        }
+
+        if (items == null) {
+            return publish(exchange.getIn().getMandatoryBody(byte[].class));
+        }
+        CompletableFuture<?>[] confirms = new CompletableFuture<?>[items.size()];
+        int index = 0;
+        for (Object item : items) {
+            confirms[index++] = publish(toBytes(item));
+        }
+        return CompletableFuture.allOf(confirms);
+    }
+
+    private byte[] toBytes(Object payload) throws IOException {
+        if (payload instanceof byte[] bytes) {
+            return bytes;
+        }
+        if (payload instanceof String text) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+        return payloadCodec.encode(payload);
+    }
+
+    private void enqueue(PendingMessage message) {
+        if (stopping) {
+            fail(message, new AmqpException("Batch publisher is stopping"));
+            return;
+        }
+        List<PendingMessage> ready = null;
+        synchronized (lock) {
+            buffer.add(message);
+            if (buffer.size() >= batchSize) {
+                ready = drainBuffer();
+            } else if (lingerTask == null) {
+                lingerTask = scheduler.schedule(this::flushLingering, lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (ready != null) {
+            List<PendingMessage> batch = ready;
+            scheduler.execute(() -> send(batch));
+        }
+    }
+
+    private void flushLingering() {
+        List<PendingMessage> ready;
+        synchronized (lock) {
+            lingerTask = null;
+            ready = drainBuffer();
+        }
+        send(ready);
+    }
+
+    // Must be called while holding lock
+    private List<PendingMessage> drainBuffer() {
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        List<PendingMessage> drained = buffer;
+        buffer = new ArrayList<>(batchSize);
+        return drained;
+    }
+
+    private void send(List<PendingMessage> batch) {
+        for (PendingMessage message : batch) {
+            CorrelationData correlation = new CorrelationData();
+            try {
+                rabbitTemplate.send(exchangeName, routingKey, message.amqpMessage, correlation);
+            } catch (AmqpException e) {
+                retryOrFail(message, e);
+                continue;
+            }
+            // Confirms are not awaited here, so the next message goes out while this one is in flight
+            correlation.getFuture()
+                    .orTimeout(confirmTimeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((confirm, error) -> onConfirm(message, confirm, error));
+        }
+        LOGGER.debugf("Sent batch of %d messages to %s", batch.size(), exchangeName);
+    }
+
+    private void onConfirm(PendingMessage message, CorrelationData.Confirm confirm, Throwable error) {
+        if (error == null && confirm.isAck()) {
+            publishLatency.record(System.nanoTime() - message.createdNanos, TimeUnit.NANOSECONDS);
+            message.result.complete(null);
+            return;
+        }
+        String reason = error != null ? "no confirm within " + confirmTimeoutMs + " ms" : confirm.getReason();
+        retryOrFail(message, new AmqpException("Message was not confirmed by the broker: " + reason));
+    }
+
+    private void retryOrFail(PendingMessage message, Exception cause) {
+        message.attempts++;
+        if (message.attempts > maxRetries) {
+            LOGGER.warn("Giving up on message after " + maxRetries + " retries: " + cause.getMessage());
+            fail(message, cause);
+            return;
+        }
+        if (stopping) {
+            fail(message, cause);
+            return;
+        }
+        long backoffMs = retryBackoffMs << Math.min(message.attempts - 1, 16);
+        LOGGER.debugf("Retrying message in %d ms (attempt %d of %d): %s", backoffMs, message.attempts, maxRetries, cause.getMessage());
+        try {
+            scheduler.schedule(() -> enqueue(message), backoffMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The scheduler was shut down between the check and the retry
+            fail(message, cause);
+        }
+    }
+
+    private void fail(PendingMessage message, Exception cause) {
+        publishFailures.increment();
+        message.result.completeExceptionally(cause);
+    }
+
+    /**
+     * A message waiting to be published, together with the future its exchange waits on.
+     */
+    private static final class PendingMessage {
+
+        private final Message amqpMessage;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final long createdNanos = System.nanoTime();
+        private int attempts;
+
+        private PendingMessage(byte[] body, MessageProperties properties) {
+            this.amqpMessage = new Message(body, properties);
+        }
+    }
+}
@@ -1,22 +1,31 @@
 package co.com.fduenasc;
 
-import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Named;
 
+import com.rabbitmq.client.ShutdownSignalException;
+import io.smallrye.common.annotation.Identifier;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Configuration class for RabbitMQ ConnectionFactory
  * This provides the Spring AMQP ConnectionFactory required by the spring-rabbitmq component
- * and automatically creates the exchange and queue for Game of Thrones messages
+ * and describes the exchange and queue for Game of Thrones messages, declared by RabbitMQTopology
+ * Publishers and consumers use separate connection factories, and publishes can be spread across several connections
  */
 @ApplicationScoped
 public class RabbitMQConfiguration {
@@ -28,9 +37,11 @@ public class RabbitMQConfiguration {
     private static final String DEFAULT_PASSWORD = "guest";
     
     // Exchange and Queue names
-    private static final String EXCHANGE_NAME = "got-exchange";
-    private static final String QUEUE_NAME = "character-queue";
-    private static final String ROUTING_KEY = "character";
+    static final String EXCHANGE_NAME = "got-exchange";
+    static final String QUEUE_NAME = "character-queue";
+    static final String ROUTING_KEY = "character";
+    static final String SUMMARY_QUEUE_NAME = "character-summary-queue";
+    static final String SUMMARY_ROUTING_KEY = "character-summary";
 
     @ConfigProperty(name = "rabbitmq.host", defaultValue = DEFAULT_HOST)
     String host;
@@ -44,52 +55,151 @@ public class RabbitMQConfiguration {
     @ConfigProperty(name = "rabbitmq.password", defaultValue = DEFAULT_PASSWORD)
     String password;
 
-    private ConnectionFactory connectionFactory;
+    // Correlated publisher confirms, required by the batch publishing mode
+    @ConfigProperty(name = "rabbitmq.publisher-confirms", defaultValue = "false")
+    boolean publisherConfirms;
 
+    // Number of publisher connections that publishes are spread across
+    @ConfigProperty(name = "rabbitmq.publisher.connections", defaultValue = "1")
+    int publisherConnections;
+
+    @ConfigProperty(name = "rabbitmq.publisher.channel-cache-size", defaultValue = "25")
+    int publisherChannelCacheSize;
+
+    @ConfigProperty(name = "rabbitmq.consumer.channel-cache-size", defaultValue = "25")
+    int consumerChannelCacheSize;
+
+    // When greater than 0, the channel cache size becomes a hard limit and callers wait up to this long for a channel
+    @ConfigProperty(name = "rabbitmq.channel-checkout-timeout-ms", defaultValue = "0")
+    long channelCheckoutTimeoutMs;
+
+    // Every connection pool created, by name, so their health and usage can be reported
+    private final Map<String, CachingConnectionFactory> connectionPools = new ConcurrentHashMap<>();
+    // Whether the shared connection of each pool is open, by name, absent until it is first opened
+    private final Map<String, Boolean> connectionStates = new ConcurrentHashMap<>();
+
+    /**
+     * Produces the connection factory used to publish messages. It is also the default
+     * connection factory of the spring-rabbitmq component.
+     * @return A single pool, or a factory that spreads publishes across several pools
+     */
     @Produces
     @ApplicationScoped
+    @Named("publisherConnectionFactory")
+    public ConnectionFactory producePublisherConnectionFactory() {
+        if (publisherConnections <= 1) {
+            return createConnectionFactory("publisher", publisherChannelCacheSize, publisherConfirms);
+        }
+        List<ConnectionFactory> shards = new ArrayList<>(publisherConnections);
+        for (int i = 0; i < publisherConnections; i++) {
+            shards.add(createConnectionFactory("publisher-" + i, publisherChannelCacheSize, publisherConfirms));
+        }
+        return new ShardedConnectionFactory(shards);
+    }
+
+    /**
+     * Produces the connection factory used by consumers, so they do not share a socket with the publishers.
+     * @return The consumer pool
+     */
+    @Produces
+    @ApplicationScoped
+    @Named("consumerConnectionFactory")
+    @Identifier("consumer")
+    public ConnectionFactory produceConsumerConnectionFactory() {
+        return createConnectionFactory("consumer", consumerChannelCacheSize, false);
+    }
+
+    /**
+     * @return Connection pools created so far, by name
+     */
+    Map<String, CachingConnectionFactory> connectionPools() {
+        return connectionPools;
+    }
+
+    /**
+     * @param name Connection pool name
+     * @return Whether the connection of the pool is open, or null when it was never opened
+     */
+    Boolean connectionState(String name) {
+        return connectionStates.get(name);
+    }
+
     @SuppressWarnings("null") // Objects.requireNonNullElse() guarantees non-null return when defaultValue is non-null
-    public ConnectionFactory produceConnectionFactory() {
+    private CachingConnectionFactory createConnectionFactory(String name, int channelCacheSize, boolean confirms) {
         CachingConnectionFactory factory = new CachingConnectionFactory();
         factory.setHost(Objects.requireNonNullElse(host, DEFAULT_HOST));
         factory.setPort(port);
         factory.setUsername(Objects.requireNonNullElse(username, DEFAULT_USERNAME));
         factory.setPassword(Objects.requireNonNullElse(password, DEFAULT_PASSWORD));
-        this.connectionFactory = factory;
+        factory.setChannelCacheSize(channelCacheSize);
+        factory.setChannelCheckoutTimeout(channelCheckoutTimeoutMs);
+        factory.setConnectionNameStrategy(connectionFactory -> "ms-apache-camel-training-" + name);
+        if (confirms) {
+            factory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        }
+        // Tracked from the connection events, so the state can be read without opening a connection
+        factory.addConnectionListener(new ConnectionStateListener(name));
+        connectionPools.put(name, factory);
         return factory;
     }
 
-    @PostConstruct
-    public void init() {
-        try {
-            // Ensure connectionFactory is initialized
-            if (connectionFactory == null) {
-                connectionFactory = produceConnectionFactory();
-            }
-            
-            // Create RabbitAdmin to manage exchanges and queues
-            // Objects.requireNonNull ensures non-null for type safety
-            ConnectionFactory factory = Objects.requireNonNull(connectionFactory, "ConnectionFactory must not be null");
-            RabbitAdmin admin = new RabbitAdmin(factory);
-            
-            // Create the exchange (topic exchange for flexibility)
-            TopicExchange exchange = new TopicExchange(EXCHANGE_NAME, true, false);
-            admin.declareExchange(exchange);
-            LOGGER.info("Created exchange: " + EXCHANGE_NAME);
-            
-            // Create the queue
-            Queue queue = new Queue(QUEUE_NAME, true, false, false);
-            admin.declareQueue(queue);
-            LOGGER.info("Created queue: " + QUEUE_NAME);
-            
-            // Bind the queue to the exchange with the routing key
-            Binding binding = BindingBuilder.bind(queue).to(exchange).with(ROUTING_KEY);
-            admin.declareBinding(binding);
-            LOGGER.info("Bound queue '" + QUEUE_NAME + "' to exchange '" + EXCHANGE_NAME + "' with routing key '" + ROUTING_KEY + "'");
-            
-        } catch (Exception e) {
-            LOGGER.warn("Failed to create RabbitMQ exchange/queue. They may already exist or RabbitMQ may not be available: " + e.getMessage());
+    /**
+     * Produces the exchange, queues and bindings used by the Game of Thrones routes.
+     * They are declared in the background by {@link RabbitMQTopology}, together with any other Declarables bean.
+     * @return The Game of Thrones topology
+     */
+    @Produces
+    @ApplicationScoped
+    @Named("gotTopology")
+    public Declarables produceGotTopology() {
+        // Topic exchange for flexibility
+        TopicExchange exchange = new TopicExchange(EXCHANGE_NAME, true, false);
+        Queue queue = new Queue(QUEUE_NAME, true, false, false);
+        // House summaries get their own queue, so character consumers never see them
+        Queue summaryQueue = new Queue(SUMMARY_QUEUE_NAME, true, false, false);
+        return new Declarables(exchange, queue, BindingBuilder.bind(queue).to(exchange).with(ROUTING_KEY),
+                summaryQueue, BindingBuilder.bind(summaryQueue).to(exchange).with(SUMMARY_ROUTING_KEY));
+    }
+
+    /**
+     * Creates a connection factory for {@link RabbitMQTopology}, which closes it once the topology is declared.
+     * @return A connection factory that is not shared with publishers or consumers
+     */
+    @SuppressWarnings("null") // Objects.requireNonNullElse() guarantees non-null return when defaultValue is non-null
+    CachingConnectionFactory createAdminConnectionFactory() {
+        CachingConnectionFactory adminFactory = new CachingConnectionFactory();
+        adminFactory.setHost(Objects.requireNonNullElse(host, DEFAULT_HOST));
+        adminFactory.setPort(port);
+        adminFactory.setUsername(Objects.requireNonNullElse(username, DEFAULT_USERNAME));
+        adminFactory.setPassword(Objects.requireNonNullElse(password, DEFAULT_PASSWORD));
+        adminFactory.setConnectionNameStrategy(connectionFactory -> "ms-apache-camel-training-admin");
+        return adminFactory;
+    }
+
+    /**
+     * Records whether the shared connection of a pool is open.
+     */
+    class ConnectionStateListener implements ConnectionListener {
+
+        private final String name;
+
+        ConnectionStateListener(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onCreate(Connection connection) {
+            connectionStates.put(name, true);
+        }
+
+        @Override
+        public void onClose(Connection connection) {
+            connectionStates.put(name, false);
+        }
+
+        @Override
+        public void onShutDown(ShutdownSignalException signal) {
+            connectionStates.put(name, false);
         }
     }
 }
-
@@ -0,0 +1,47 @@
+package co.com.fduenasc;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+
+import java.util.Map;
+
+/**
+ * Readiness check reporting the state and usage of every RabbitMQ connection pool
+ * (publisher shards and consumer), available at /q/health/ready.
+ * For each pool it reports whether its connection is open and its channel cache figures.
+ * The state is read from the connection events, so a probe never opens a connection; a pool whose
+ * connection was never opened is reported as not connected yet without failing the check.
+ */
+@Readiness
+@ApplicationScoped
+public class RabbitMQConnectionPoolsHealthCheck implements HealthCheck {
+
+    @Inject
+    RabbitMQConfiguration configuration;
+
+    @Override
+    public HealthCheckResponse call() {
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("rabbitmq-connection-pools").up();
+        for (Map.Entry<String, CachingConnectionFactory> pool : configuration.connectionPools().entrySet()) {
+            String name = pool.getKey();
+            CachingConnectionFactory factory = pool.getValue();
+
+            Boolean open = configuration.connectionState(name);
+            if (open == null) {
+                response.withData(name + ".open", "not connected yet");
+            } else {
+                response.withData(name + ".open", open);
+                if (!open) {
+                    response.down();
+                }
+            }
+            factory.getCacheProperties().forEach((key, value) -> response.withData(name + "." + key, String.valueOf(value)));
+        }
+        return response.build();
+    }
+}
@@ -0,0 +1,167 @@
+package co.com.fduenasc;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Any;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RabbitMQTopology declares the exchanges, queues and bindings of every Declarables bean
+ * once the application has started, on a background thread, so startup never waits on the broker.
+ * Failed attempts are retried with exponential backoff and jitter until they succeed.
+ * The rabbitmq-topology readiness check stays down until then, and the time it took to get ready,
+ * from process start and from application startup, is logged.
+ */
+@ApplicationScoped
+public class RabbitMQTopology {
+
+    private static final Logger LOGGER = Logger.getLogger(RabbitMQTopology.class);
+
+    @ConfigProperty(name = "rabbitmq.topology.initial-backoff-ms", defaultValue = "500")
+    long initialBackoffMs;
+
+    @ConfigProperty(name = "rabbitmq.topology.max-backoff-ms", defaultValue = "30000")
+    long maxBackoffMs;
+
+    // 0 retries until the declaration succeeds
+    @ConfigProperty(name = "rabbitmq.topology.max-attempts", defaultValue = "0")
+    int maxAttempts;
+
+    @Inject
+    RabbitMQConfiguration configuration;
+
+    @Inject
+    @Any
+    Instance<Declarables> declarables;
+
+    private ScheduledExecutorService scheduler;
+    private long startupNanos;
+
+    private volatile boolean declared;
+    private volatile int attempts;
+    private volatile String lastError;
+
+    void onStart(@Observes StartupEvent event) {
+        startupNanos = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rabbitmq-topology");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::declare);
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @return true once every declaration has succeeded
+     */
+    public boolean isDeclared() {
+        return declared;
+    }
+
+    /**
+     * @return Declaration attempts made so far
+     */
+    public int attempts() {
+        return attempts;
+    }
+
+    /**
+     * @return Error of the last failed attempt, or null
+     */
+    public String lastError() {
+        return lastError;
+    }
+
+    private void declare() {
+        attempts++;
+        CachingConnectionFactory adminFactory = configuration.createAdminConnectionFactory();
+        try {
+            RabbitAdmin admin = new RabbitAdmin(adminFactory);
+            for (Declarables group : declarables) {
+                for (Declarable declarable : group.getDeclarables()) {
+                    declare(admin, declarable);
+                }
+            }
+            declared = true;
+            lastError = null;
+            logTimeToReady();
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            if (maxAttempts > 0 && attempts >= maxAttempts) {
+                LOGGER.error("Giving up on declaring the RabbitMQ topology after " + attempts + " attempts: " + e.getMessage());
+                return;
+            }
+            long backoff = backoff();
+            LOGGER.warn("Failed to declare the RabbitMQ topology (attempt " + attempts + "), retrying in " + backoff + " ms: " + e.getMessage());
+            scheduler.schedule(this::declare, backoff, TimeUnit.MILLISECONDS);
+        } finally {
+            adminFactory.destroy();
+        }
+    }
+
+    private static void declare(RabbitAdmin admin, Declarable declarable) {
+        if (declarable instanceof Exchange exchange) {
+            admin.declareExchange(exchange);
+            LOGGER.info("Created exchange: " + exchange.getName());
+        } else if (declarable instanceof Queue queue) {
+            admin.declareQueue(queue);
+            LOGGER.info("Created queue: " + queue.getName());
+        } else if (declarable instanceof Binding binding) {
+            admin.declareBinding(binding);
+            LOGGER.info("Bound " + binding.getDestinationType().name().toLowerCase(Locale.ROOT) + " '" + binding.getDestination()
+                    + "' to exchange '" + binding.getExchange() + "' with routing key '" + binding.getRoutingKey() + "'");
+        }
+    }
+
+    /**
+     * @return Delay before the next attempt: doubles with each attempt up to the maximum, with up to 20% jitter
+     */
+    private long backoff() {
+        double exponential = initialBackoffMs * Math.pow(2, Math.min(attempts - 1, 30));
+        long capped = (long) Math.min(exponential, maxBackoffMs);
+        return capped - ThreadLocalRandom.current().nextLong(capped / 5 + 1);
+    }
+
+    private void logTimeToReady() {
+        long sinceStartup = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startupNanos);
+        String sinceProcessStart = ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis() + " ms")
+                .orElse("unknown");
+        List<String> names = new ArrayList<>();
+        declarables.forEach(group -> group.getDeclarables().forEach(declarable -> {
+            if (declarable instanceof Exchange exchange) {
+                names.add(exchange.getName());
+            } else if (declarable instanceof Queue queue) {
+                names.add(queue.getName());
+            }
+        }));
+        LOGGER.info("RabbitMQ topology " + names + " declared after " + attempts + " attempt(s): ready "
+                + sinceStartup + " ms after startup, " + sinceProcessStart + " after process start");
+    }
+}
@@ -0,0 +1,31 @@
+package co.com.fduenasc;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+/**
+ * Readiness check that stays down until {@link RabbitMQTopology} has declared
+ * every exchange, queue and binding, available at /q/health/ready.
+ */
+@Readiness
+@ApplicationScoped
+public class RabbitMQTopologyHealthCheck implements HealthCheck {
+
+    @Inject
+    RabbitMQTopology topology;
+
+    @Override
+    public HealthCheckResponse call() {
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("rabbitmq-topology")
+                .status(topology.isDeclared())
+                .withData("attempts", topology.attempts());
+        if (topology.lastError() != null) {
+            response.withData("lastError", topology.lastError());
+        }
+        return response.build();
+    }
+}
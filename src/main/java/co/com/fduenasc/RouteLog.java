@@ -0,0 +1,325 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RouteLog builds the processors the routes use to log their messages, in place of log() steps.
+ * Each route is configured with route-log.&lt;routeId&gt;.* properties, falling back to route-log.*:
+ * messages can be sampled (1 in N and/or at most N per second), bodies are truncated, and
+ * nothing is evaluated unless the message is sampled and its level is enabled for the route.
+ * In async mode the message is formatted and written by a single appender thread, started only once
+ * a route logs in async mode; when its bounded queue is full the message is dropped and counted in
+ * the route.log.dropped metric.
+ * Messages use the route id as logger name, the same as log() steps.
+ */
+@ApplicationScoped
+public class RouteLog {
+
+    private static final Logger LOGGER = Logger.getLogger(RouteLog.class);
+
+    static final String DROPPED_COUNTER = "route.log.dropped";
+
+    private static final String PREFIX = "route-log.";
+    private static final String PLACEHOLDER_START = "${";
+
+    // Messages waiting for the appender thread, shared by all routes
+    @ConfigProperty(name = "route-log.queue-size", defaultValue = "8192")
+    int queueSize;
+
+    @Inject
+    Config config;
+
+    @Inject
+    RouteMetrics routeMetrics;
+
+    // Created with the appender thread, when the first route logging in async mode asks for a processor
+    private volatile BlockingQueue<LogEvent> queue;
+    private Thread appender;
+    private volatile boolean running = true;
+
+    @PreDestroy
+    synchronized void shutdown() {
+        running = false;
+        if (appender == null) {
+            return;
+        }
+        try {
+            // Let the appender write what is already queued
+            appender.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the processor that logs a message at INFO level for a route.
+     * The template may reference ${body}, ${header.name}, ${exchangeProperty.name} and ${exception.message};
+     * anything else is written as is.
+     * @param routeId Route the processor belongs to, used as logger name and to look up its settings
+     * @param template Message template
+     * @return Processor that logs the message
+     */
+    public Processor info(String routeId, String template) {
+        return processor(routeId, Logger.Level.INFO, template);
+    }
+
+    /**
+     * Creates the processor that logs a message at ERROR level for a route, with the same template
+     * and settings as {@link #info(String, String)}.
+     * @param routeId Route the processor belongs to, used as logger name and to look up its settings
+     * @param template Message template
+     * @return Processor that logs the message
+     */
+    public Processor error(String routeId, String template) {
+        return processor(routeId, Logger.Level.ERROR, template);
+    }
+
+    private Processor processor(String routeId, Logger.Level level, String template) {
+        Settings settings = settings(routeId);
+        if (settings.enabled() && settings.async()) {
+            startAppender();
+        }
+        return new RouteLogProcessor(routeId, level, template, settings);
+    }
+
+    private synchronized void startAppender() {
+        if (appender != null) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        appender = new Thread(this::drain, "route-log-appender");
+        appender.setDaemon(true);
+        appender.start();
+    }
+
+    /**
+     * @param routeId Route identifier
+     * @return Settings of the route, falling back to the route-log.* defaults
+     */
+    Settings settings(String routeId) {
+        return new Settings(
+                setting(routeId, "enabled", Boolean.class, true),
+                setting(routeId, "async", Boolean.class, false),
+                Math.max(setting(routeId, "sample-rate", Integer.class, 1), 1),
+                setting(routeId, "max-per-second", Integer.class, 0),
+                setting(routeId, "max-body-length", Integer.class, 1000));
+    }
+
+    private <T> T setting(String routeId, String name, Class<T> type, T defaultValue) {
+        return config.getOptionalValue(PREFIX + routeId + "." + name, type)
+                .or(() -> config.getOptionalValue(PREFIX + name, type))
+                .orElse(defaultValue);
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                LogEvent event = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    event.logger().log(event.level(), event.format());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not write route log message", e);
+            }
+        }
+    }
+
+    /**
+     * Logging settings of a route.
+     * @param enabled Whether the route logs at all
+     * @param async Whether messages are written by the appender thread
+     * @param sampleRate One in sampleRate messages is logged, on average
+     * @param maxPerSecond Messages logged per second at most, 0 for no limit
+     * @param maxBodyLength Characters of the body kept in the message, 0 or less for no limit
+     */
+    record Settings(boolean enabled, boolean async, int sampleRate, int maxPerSecond, int maxBodyLength) {
+    }
+
+    /**
+     * A message whose values were captured on the route thread and that is formatted on the appender thread.
+     */
+    private record LogEvent(Logger logger, Logger.Level level, String[] parts, String[] values) {
+
+        String format() {
+            StringBuilder message = new StringBuilder();
+            for (int i = 0; i < parts.length; i++) {
+                message.append(parts[i]);
+                if (i < values.length) {
+                    message.append(values[i]);
+                }
+            }
+            return message.toString();
+        }
+    }
+
+    /**
+     * A value referenced by a message template.
+     * @param source Where the value is read from
+     * @param name Header or exchange property name, null for the other sources
+     */
+    private record Placeholder(Source source, String name) {
+
+        private static final String HEADER = "header.";
+        private static final String PROPERTY = "exchangeProperty.";
+
+        // null for expressions that are not supported, which are then written as is
+        static Placeholder parse(String expression) {
+            if (expression.equals("body")) {
+                return new Placeholder(Source.BODY, null);
+            }
+            if (expression.equals("exception.message")) {
+                return new Placeholder(Source.EXCEPTION_MESSAGE, null);
+            }
+            if (expression.startsWith(HEADER)) {
+                return new Placeholder(Source.HEADER, expression.substring(HEADER.length()));
+            }
+            if (expression.startsWith(PROPERTY)) {
+                return new Placeholder(Source.PROPERTY, expression.substring(PROPERTY.length()));
+            }
+            return null;
+        }
+
+        enum Source { BODY, HEADER, PROPERTY, EXCEPTION_MESSAGE }
+    }
+
+    private final class RouteLogProcessor implements Processor {
+
+        private final Logger logger;
+        private final Logger.Level level;
+        private final Settings settings;
+        private final Counter dropped;
+
+        // The template split around its placeholders: parts[i] goes before placeholders[i]
+        private final String[] parts;
+        private final Placeholder[] placeholders;
+
+        // Rate limit window, in whole seconds of System.nanoTime()
+        private volatile long window;
+        private final AtomicInteger loggedInWindow = new AtomicInteger();
+
+        private RouteLogProcessor(String routeId, Logger.Level level, String template, Settings settings) {
+            this.logger = Logger.getLogger(routeId);
+            this.level = level;
+            this.settings = settings;
+            this.dropped = Counter.builder(DROPPED_COUNTER).tag("routeId", routeId).register(routeMetrics.registry());
+
+            List<String> templateParts = new ArrayList<>();
+            List<Placeholder> templatePlaceholders = new ArrayList<>();
+            int position = 0;
+            int search = 0;
+            while (true) {
+                int start = template.indexOf(PLACEHOLDER_START, search);
+                int end = start < 0 ? -1 : template.indexOf('}', start);
+                if (end < 0) {
+                    break;
+                }
+                Placeholder placeholder = Placeholder.parse(template.substring(start + PLACEHOLDER_START.length(), end));
+                if (placeholder != null) {
+                    templateParts.add(template.substring(position, start));
+                    templatePlaceholders.add(placeholder);
+                    position = end + 1;
+                }
+                search = end + 1;
+            }
+            templateParts.add(template.substring(position));
+            this.parts = templateParts.toArray(new String[0]);
+            this.placeholders = templatePlaceholders.toArray(new Placeholder[0]);
+        }
+
+        @Override
+        public void process(Exchange exchange) {
+            if (!settings.enabled() || !logger.isEnabled(level) || !sampled()) {
+                return;
+            }
+
+            // Only the values are captured here; building the message is left to whoever writes it
+            String[] values = new String[placeholders.length];
+            for (int i = 0; i < placeholders.length; i++) {
+                values[i] = value(exchange, placeholders[i]);
+            }
+            LogEvent event = new LogEvent(logger, level, parts, values);
+
+            if (!settings.async()) {
+                logger.log(level, event.format());
+            } else if (!queue.offer(event)) {
+                dropped.increment();
+            }
+        }
+
+        private boolean sampled() {
+            if (settings.sampleRate() > 1 && ThreadLocalRandom.current().nextInt(settings.sampleRate()) != 0) {
+                return false;
+            }
+            if (settings.maxPerSecond() <= 0) {
+                return true;
+            }
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            if (second != window) {
+                synchronized (this) {
+                    if (second != window) {
+                        window = second;
+                        loggedInWindow.set(0);
+                    }
+                }
+            }
+            return loggedInWindow.incrementAndGet() <= settings.maxPerSecond();
+        }
+
+        private String value(Exchange exchange, Placeholder placeholder) {
+            return switch (placeholder.source()) {
+                case BODY -> body(exchange);
+                case HEADER -> String.valueOf(exchange.getIn().getHeader(placeholder.name()));
+                case PROPERTY -> String.valueOf(exchange.getProperty(placeholder.name()));
+                case EXCEPTION_MESSAGE -> {
+                    // Inside doCatch and onException the exception is only kept as a property
+                    Throwable exception = exchange.getException() != null
+                            ? exchange.getException()
+                            : exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Throwable.class);
+                    yield exception == null ? "null" : exception.getMessage();
+                }
+            };
+        }
+
+        private String body(Exchange exchange) {
+            Object body = exchange.getIn().getBody();
+            // Streams are left untouched, reading them here would consume the body
+            if (body instanceof InputStream || body instanceof Reader) {
+                return "[" + body.getClass().getSimpleName() + "]";
+            }
+            int max = settings.maxBodyLength();
+            String text;
+            if (body instanceof byte[] bytes) {
+                int length = max > 0 ? Math.min(bytes.length, max) : bytes.length;
+                text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                return length < bytes.length ? text + "... [" + bytes.length + " bytes]" : text;
+            }
+            text = body instanceof String string ? string : exchange.getIn().getBody(String.class);
+            if (text != null && max > 0 && text.length() > max) {
+                return text.substring(0, max) + "... [" + text.length() + " chars]";
+            }
+            return text;
+        }
+    }
+}
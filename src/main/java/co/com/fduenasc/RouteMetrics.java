@@ -0,0 +1,115 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Processor;
+import org.apache.camel.Route;
+import org.apache.camel.spi.InflightRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RouteMetrics provides processors that record route level metrics on top of the ones
+ * the Camel route policy already records for every route (throughput, processing time and failures),
+ * and publishes the number of exchanges in flight in each route.
+ * Meters are registered once, when the route is built, so recording only updates a counter or timer.
+ */
+@ApplicationScoped
+public class RouteMetrics {
+
+    static final String BRANCH_COUNTER = "camel.route.branch.exchanges";
+    static final String INFLIGHT_GAUGE = "camel.route.inflight.exchanges";
+
+    @Inject
+    MeterRegistry registry;
+
+    void registerInflightGauges(@Observes StartupEvent event, CamelContext camelContext) {
+        // Read from Camel's inflight repository when scraped, nothing is recorded per exchange
+        InflightRepository inflight = camelContext.getInflightRepository();
+        for (Route route : camelContext.getRoutes()) {
+            String routeId = route.getRouteId();
+            Gauge.builder(INFLIGHT_GAUGE, inflight, repository -> repository.size(routeId))
+                    .tag("routeId", routeId)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * @param routeId Route the branch belongs to
+     * @param branch Branch name
+     * @return Processor that counts the exchanges taking the branch
+     */
+    public Processor countBranch(String routeId, String branch) {
+        Counter counter = branchCounter(routeId, branch);
+        return exchange -> counter.increment();
+    }
+
+    /**
+     * @param routeId Route the branch belongs to
+     * @param header Header holding the name of the branch taken by the exchange
+     * @return Processor that counts the exchanges taking each branch
+     */
+    public Processor countBranchFromHeader(String routeId, String header) {
+        Map<String, Counter> counters = new ConcurrentHashMap<>();
+        return exchange -> {
+            String branch = exchange.getIn().getHeader(header, String.class);
+            counters.computeIfAbsent(String.valueOf(branch), name -> branchCounter(routeId, name)).increment();
+        };
+    }
+
+    /**
+     * @param property Exchange property that holds the running sample
+     * @return Processor that starts timing the exchange
+     */
+    public Processor startTimer(String property) {
+        return exchange -> exchange.setProperty(property, Timer.start(registry));
+    }
+
+    /**
+     * @param property Exchange property holding the sample started by {@link #startTimer(String)}
+     * @param name Timer name
+     * @param tags Timer tags as key/value pairs
+     * @return Processor that records the time elapsed since the sample was started
+     */
+    public Processor stopTimer(String property, String name, String... tags) {
+        Timer timer = timer(name, tags);
+        return exchange -> {
+            Timer.Sample sample = exchange.getProperty(property, Timer.Sample.class);
+            if (sample != null) {
+                sample.stop(timer);
+                exchange.removeProperty(property);
+            }
+        };
+    }
+
+    /**
+     * @param name Timer name
+     * @param tags Timer tags as key/value pairs
+     * @return The timer, registered if it did not exist yet
+     */
+    public Timer timer(String name, String... tags) {
+        return Timer.builder(name).tags(tags).register(registry);
+    }
+
+    /**
+     * @return Registry the metrics are recorded in
+     */
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    private Counter branchCounter(String routeId, String branch) {
+        return Counter.builder(BRANCH_COUNTER)
+                .tag("routeId", routeId)
+                .tag("branch", branch)
+                .register(registry);
+    }
+}
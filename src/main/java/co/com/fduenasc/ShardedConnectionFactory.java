@@ -0,0 +1,35 @@
+package co.com.fduenasc;
+
+import org.springframework.amqp.rabbit.connection.AbstractRoutingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection factory that spreads the work across several connection factories in round robin,
+ * so publishes are not limited by a single TCP connection and its channel cache.
+ * Every call to createConnection() picks the next shard.
+ */
+class ShardedConnectionFactory extends AbstractRoutingConnectionFactory {
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final int shardCount;
+
+    ShardedConnectionFactory(List<ConnectionFactory> shards) {
+        Map<Object, ConnectionFactory> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(shards.get(0));
+        this.shardCount = shards.size();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return Math.floorMod(next.getAndIncrement(), shardCount);
+    }
+}
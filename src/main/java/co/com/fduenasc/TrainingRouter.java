@@ -21,7 +21,8 @@ public class TrainingRouter extends RouteBuilder {
                 .process(exchange -> {
                     String message = exchange.getIn().getBody(String.class);
                     LOGGER.info(message);
-                });
+                })
+                .routeId("training-route");
     }
 }
 
@@ -0,0 +1,213 @@
+package co.com.fduenasc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * InputStream that converts UTF-8 text from another stream to uppercase while it is read.
+ * The source is read in fixed-size chunks, so memory use does not depend on the body size.
+ * Chunks made only of ASCII bytes are converted in place without decoding; any other chunk
+ * is decoded into a reused char buffer, converted there with {@link Character#toUpperCase(int)}
+ * and encoded into a reused byte buffer, carrying multi-byte sequences split across chunks
+ * over to the next one. Neither path allocates, except for chunks holding a character whose
+ * uppercase form is longer (like 'ß' to "SS"), which go through {@link String#toUpperCase(Locale)}.
+ */
+class UppercaseInputStream extends InputStream {
+
+    // Room for the longest UTF-8 sequence, a smaller chunk could never complete a carried one
+    static final int MIN_CHUNK_SIZE = 4;
+
+    // A char takes at most 3 bytes in UTF-8, a surrogate pair 4
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    // BMP chars that String.toUpperCase maps differently from Character.toUpperCase, mostly to several chars
+    private static final BitSet SPECIAL_CASING = new BitSet(Character.MAX_VALUE + 1);
+
+    static {
+        for (char c = 0; c < Character.MIN_SURROGATE; c++) {
+            markSpecialCasing(c);
+        }
+        for (int c = Character.MAX_SURROGATE + 1; c <= Character.MAX_VALUE; c++) {
+            markSpecialCasing((char) c);
+        }
+    }
+
+    private final InputStream source;
+    private final byte[] input;
+    private final ByteBuffer inputBuffer;
+    private final CharBuffer chars;
+    private final ByteBuffer encoded;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // Bytes at the start of input that belong to a sequence not yet decoded
+    private int carry;
+
+    // Converted bytes waiting to be read
+    private byte[] output;
+    private int outputPosition;
+    private int outputLimit;
+
+    private boolean finished;
+
+    UppercaseInputStream(InputStream source, int chunkSize) {
+        this.source = source;
+        this.input = new byte[Math.max(chunkSize, MIN_CHUNK_SIZE)];
+        this.inputBuffer = ByteBuffer.wrap(input);
+        // Decoding never yields more chars than bytes
+        this.chars = CharBuffer.allocate(input.length);
+        this.encoded = ByteBuffer.allocate(input.length * MAX_BYTES_PER_CHAR);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return output[outputPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, outputLimit - outputPosition);
+        System.arraycopy(output, outputPosition, buffer, offset, count);
+        outputPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return outputLimit - outputPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * Converts the next chunk when everything converted so far has been read.
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        while (outputPosition == outputLimit) {
+            if (finished) {
+                return false;
+            }
+            int read = source.read(input, carry, input.length - carry);
+            if (read < 0) {
+                finished = true;
+                if (carry > 0) {
+                    // Truncated sequence at the end of the body
+                    decode(carry, true);
+                }
+                continue;
+            }
+            int length = carry + read;
+            if (carry > 0 || !uppercaseAscii(length)) {
+                decode(length, false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts the chunk in place when it only holds ASCII bytes.
+     * @return false, leaving the chunk untouched, when a non-ASCII byte is found
+     */
+    private boolean uppercaseAscii(int length) {
+        for (int i = 0; i < length; i++) {
+            if (input[i] < 0) {
+                return false;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = input[i];
+            if (b >= 'a' && b <= 'z') {
+                input[i] = (byte) (b - ('a' - 'A'));
+            }
+        }
+        output = input;
+        outputPosition = 0;
+        outputLimit = length;
+        return true;
+    }
+
+    private void decode(int length, boolean endOfInput) {
+        inputBuffer.clear().limit(length);
+        chars.clear();
+        decoder.decode(inputBuffer, chars, endOfInput);
+        if (endOfInput) {
+            decoder.flush(chars);
+        }
+        chars.flip();
+
+        if (uppercaseChars()) {
+            encoded.clear();
+            encoder.reset();
+            encoder.encode(chars, encoded, true);
+            encoder.flush(encoded);
+            output = encoded.array();
+            outputLimit = encoded.position();
+        } else {
+            // Uppercasing is idempotent, so the chars already converted in place can be converted again
+            output = chars.toString().toUpperCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+            outputLimit = output.length;
+        }
+        outputPosition = 0;
+
+        // Keep an incomplete trailing sequence for the next chunk
+        carry = inputBuffer.remaining();
+        System.arraycopy(input, inputBuffer.position(), input, 0, carry);
+    }
+
+    /**
+     * Converts the decoded chars to uppercase in place.
+     * @return false when a char needs special casing, leaving the chars partly converted
+     */
+    private boolean uppercaseChars() {
+        char[] array = chars.array();
+        int limit = chars.limit();
+        for (int i = 0; i < limit; i++) {
+            char c = array[i];
+            if (Character.isHighSurrogate(c) && i + 1 < limit && Character.isLowSurrogate(array[i + 1])) {
+                int upper = Character.toUpperCase(Character.toCodePoint(c, array[i + 1]));
+                if (!Character.isSupplementaryCodePoint(upper)) {
+                    return false;
+                }
+                array[i] = Character.highSurrogate(upper);
+                array[++i] = Character.lowSurrogate(upper);
+            } else if (SPECIAL_CASING.get(c)) {
+                return false;
+            } else {
+                array[i] = Character.toUpperCase(c);
+            }
+        }
+        return true;
+    }
+
+    private static void markSpecialCasing(char c) {
+        String upper = String.valueOf(c).toUpperCase(Locale.ROOT);
+        if (upper.length() != 1 || upper.charAt(0) != Character.toUpperCase(c)) {
+            SPECIAL_CASING.set(c);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApiCircuitBreakerTest {
+
+    private final DefaultCamelContext context = new DefaultCamelContext();
+    private final Counter rejected = new SimpleMeterRegistry().counter("rejected");
+
+    @Test
+    void opensWhenTheFailureRatioIsReached() {
+        ApiCircuitBreaker breaker = new ApiCircuitBreaker(10, 4, 50, 60_000, rejected);
+
+        call(breaker, 200);
+        call(breaker, 500);
+        call(breaker, 200);
+        assertFalse(breaker.isOpen());
+        call(breaker, 503);
+
+        assertTrue(breaker.isOpen());
+        Exchange exchange = exchange();
+        breaker.acquire(exchange);
+        assertEquals("circuit open", exchange.getProperty(ApiCircuitBreaker.REJECTED));
+        assertEquals(1.0, rejected.count(), 0);
+    }
+
+    @Test
+    void countsOnlyServerErrorsAsFailures() {
+        ApiCircuitBreaker breaker = new ApiCircuitBreaker(10, 2, 50, 60_000, rejected);
+
+        call(breaker, 404);
+        call(breaker, 400);
+
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void countsExceptionsAsFailures() {
+        ApiCircuitBreaker breaker = new ApiCircuitBreaker(10, 1, 100, 60_000, rejected);
+
+        Exchange exchange = exchange();
+        breaker.acquire(exchange);
+        exchange.setException(new IllegalStateException("connection refused"));
+        breaker.release(exchange);
+
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void bulkheadRejectsCallsOverTheLimit() {
+        ApiCircuitBreaker breaker = new ApiCircuitBreaker(1, 10, 50, 60_000, rejected);
+
+        Exchange first = exchange();
+        breaker.acquire(first);
+        assertNull(first.getProperty(ApiCircuitBreaker.REJECTED));
+
+        Exchange second = exchange();
+        breaker.acquire(second);
+        assertEquals("bulkhead full", second.getProperty(ApiCircuitBreaker.REJECTED));
+
+        first.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+        breaker.release(first);
+        // A second release of the same exchange must not free another permit
+        breaker.release(first);
+
+        Exchange third = exchange();
+        breaker.acquire(third);
+        assertNull(third.getProperty(ApiCircuitBreaker.REJECTED));
+        Exchange fourth = exchange();
+        breaker.acquire(fourth);
+        assertEquals("bulkhead full", fourth.getProperty(ApiCircuitBreaker.REJECTED));
+    }
+
+    @Test
+    void halfOpenCircuitLetsOneTrialCallThrough() {
+        ApiCircuitBreaker breaker = new ApiCircuitBreaker(10, 1, 100, 0, rejected);
+        call(breaker, 500);
+        assertTrue(breaker.isOpen());
+
+        Exchange trial = exchange();
+        breaker.acquire(trial);
+        assertNull(trial.getProperty(ApiCircuitBreaker.REJECTED));
+        Exchange other = exchange();
+        breaker.acquire(other);
+        assertEquals("circuit open", other.getProperty(ApiCircuitBreaker.REJECTED));
+
+        trial.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+        breaker.release(trial);
+
+        assertFalse(breaker.isOpen());
+        Exchange next = exchange();
+        breaker.acquire(next);
+        assertNull(next.getProperty(ApiCircuitBreaker.REJECTED));
+    }
+
+    @Test
+    void failedTrialCallOpensTheCircuitAgain() {
+        ApiCircuitBreaker breaker = new ApiCircuitBreaker(10, 1, 100, 0, rejected);
+        call(breaker, 500);
+
+        call(breaker, 502);
+
+        assertTrue(breaker.isOpen());
+    }
+
+    private void call(ApiCircuitBreaker breaker, int responseCode) {
+        Exchange exchange = exchange();
+        breaker.acquire(exchange);
+        exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, responseCode);
+        breaker.release(exchange);
+    }
+
+    private Exchange exchange() {
+        return new DefaultExchange(context);
+    }
+}
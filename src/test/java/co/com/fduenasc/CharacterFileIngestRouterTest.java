@@ -0,0 +1,226 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CharacterFileIngestRouterTest {
+
+    private static final long WAIT_MS = 20_000;
+    // Long enough for the file to be moved if the route was going to move it
+    private static final long QUIET_MS = 1_500;
+    private static final String PUBLISH_ENDPOINT = "direct:published";
+    private static final String FILE_NAME = "characters.csv";
+    private static final List<String> NAMES = List.of("Jon Snow", "Arya Stark", "Sansa Stark", "Tyrion Lannister",
+            "Cersei Lannister", "Daenerys Targaryen", "Theon Greyjoy");
+
+    @TempDir
+    Path directory;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final DefaultCamelContext context = new DefaultCamelContext();
+    // Records that reached the publish endpoint, in the order they got there
+    private final List<GameOfThronesCharacter> published = new CopyOnWriteArrayList<>();
+    // Held by the publish endpoint until the test lets the records through
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean holdRecords;
+    private volatile String failingName;
+    private PayloadCodec payloadCodec;
+
+    @AfterEach
+    void stopContext() {
+        release.countDown();
+        context.stop();
+    }
+
+    @Test
+    void publishesRecordsWithTheSameKeyInFileOrderAcrossLanes() throws Exception {
+        startRoutes();
+
+        int records = 7 * 40;
+        dropFile(records);
+        await(() -> Files.exists(done()));
+
+        assertEquals(records, published.size());
+        // The description carries the position of the record in the file
+        Map<String, Integer> lastPosition = new HashMap<>();
+        for (GameOfThronesCharacter character : published) {
+            int position = Integer.parseInt(character.description());
+            Integer previous = lastPosition.put(character.name(), position);
+            assertTrue(previous == null || previous < position,
+                    character.name() + " record " + position + " was published after record " + previous);
+        }
+        assertEquals(NAMES.size(), lastPosition.size());
+    }
+
+    @Test
+    void movesTheFileToDoneOnlyOnceEveryRecordIsPublished() throws Exception {
+        holdRecords = true;
+        startRoutes();
+
+        int records = 20;
+        dropFile(records);
+        // The whole file is read and waits in the lanes, but nothing has been published yet
+        await(() -> registry.get("got.file.records").tag("outcome", "read").counter().count() == records);
+        Thread.sleep(QUIET_MS);
+        assertFalse(Files.exists(done()));
+        assertFalse(Files.exists(failed()));
+
+        release.countDown();
+        await(() -> Files.exists(done()));
+        assertEquals(records, published.size());
+        assertFalse(Files.exists(directory.resolve(FILE_NAME)));
+    }
+
+    @Test
+    void movesTheFileToFailedWhenSomeRecordsCannotBePublished() throws Exception {
+        failingName = "Theon Greyjoy";
+        startRoutes();
+
+        int records = 7 * 5;
+        dropFile(records);
+        await(() -> Files.exists(failed()));
+
+        assertFalse(Files.exists(done()));
+        // The other records are still published before the file is moved
+        assertEquals(records - 5, published.size());
+        assertTrue(published.stream().noneMatch(character -> character.name().equals(failingName)));
+        assertEquals(5, registry.get("got.file.records").tag("outcome", "failed").counter().count());
+    }
+
+    @Test
+    void parsesPlainFields() {
+        assertEquals(new GameOfThronesCharacter("Jon Snow", "Stark", "King in the North", "Bastard of Winterfell", "Alive"),
+                CharacterFileIngestRouter.parseCsv("Jon Snow,Stark,King in the North,Bastard of Winterfell,Alive"));
+    }
+
+    @Test
+    void keepsCommasInsideQuotedFields() {
+        assertEquals(new GameOfThronesCharacter("Daenerys Targaryen", "Targaryen", "Queen of Meereen, Khaleesi", "Mother of Dragons", "Deceased"),
+                CharacterFileIngestRouter.parseCsv("Daenerys Targaryen,Targaryen,\"Queen of Meereen, Khaleesi\",Mother of Dragons,Deceased"));
+    }
+
+    @Test
+    void unescapesDoubledQuotes() {
+        assertEquals(new GameOfThronesCharacter("Sandor Clegane", "Clegane", "", "Known as \"The Hound\"", "Alive"),
+                CharacterFileIngestRouter.parseCsv("Sandor Clegane,Clegane,,\"Known as \"\"The Hound\"\"\",Alive"));
+    }
+
+    @Test
+    void acceptsQuotesAroundEveryField() {
+        assertEquals(new GameOfThronesCharacter("Arya Stark", "Stark", "", "", "Alive"),
+                CharacterFileIngestRouter.parseCsv("\"Arya Stark\",\"Stark\",\"\",\"\",\"Alive\""));
+    }
+
+    @Test
+    void keepsEmptyTrailingFields() {
+        assertEquals(new GameOfThronesCharacter("Hodor", "", "", "", ""),
+                CharacterFileIngestRouter.parseCsv("Hodor,,,,"));
+    }
+
+    @Test
+    void rejectsLinesWithTheWrongNumberOfColumns() {
+        assertThrows(IllegalArgumentException.class, () -> CharacterFileIngestRouter.parseCsv("Jon Snow,Stark,Alive"));
+        assertThrows(IllegalArgumentException.class, () -> CharacterFileIngestRouter.parseCsv("a,b,c,d,e,f"));
+        // An unclosed quote swallows the remaining separators
+        assertThrows(IllegalArgumentException.class, () -> CharacterFileIngestRouter.parseCsv("\"Jon Snow,Stark,,,Alive"));
+    }
+
+    private void startRoutes() throws Exception {
+        payloadCodec = new PayloadCodec();
+        payloadCodec.format = "json";
+        payloadCodec.compression = "none";
+        payloadCodec.compressionThreshold = 1024;
+        payloadCodec.init();
+        RouteMetrics routeMetrics = new RouteMetrics();
+        routeMetrics.registry = registry;
+
+        CharacterFileIngestRouter router = new CharacterFileIngestRouter();
+        router.enabled = true;
+        router.directory = directory.toString();
+        router.lanes = 4;
+        // Room for a whole test file, so it can be read completely while its records are held
+        router.laneQueueSize = 100;
+        router.orderingKey = "name";
+        router.publishEndpoint = PUBLISH_ENDPOINT;
+        router.reportIntervalMs = 200;
+        router.payloadCodec = payloadCodec;
+        router.routeMetrics = routeMetrics;
+
+        context.addRoutes(router);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from(PUBLISH_ENDPOINT).process(exchange -> {
+                    if (holdRecords) {
+                        release.await(WAIT_MS, TimeUnit.MILLISECONDS);
+                    }
+                    GameOfThronesCharacter character = payloadCodec.decode(
+                            exchange.getIn().getBody(byte[].class), GameOfThronesCharacter.class);
+                    if (character.name().equals(failingName)) {
+                        throw new IllegalStateException("Broker rejected " + character.name());
+                    }
+                    // Lets the lanes overtake each other
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                    published.add(character);
+                });
+            }
+        });
+        context.start();
+    }
+
+    /**
+     * Drops a CSV file whose records cycle through {@link #NAMES}, with their position in the description.
+     */
+    private void dropFile(int records) throws Exception {
+        List<String> lines = new ArrayList<>(records + 1);
+        lines.add("name,house,title,description,status");
+        for (int i = 0; i < records; i++) {
+            String name = NAMES.get(i % NAMES.size());
+            lines.add(name + "," + name.substring(name.indexOf(' ') + 1) + ",," + i + ",Alive");
+        }
+        // Written under a name the route ignores, then renamed, so it is never picked up half written
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+        Files.write(temporary, lines, StandardCharsets.UTF_8);
+        Files.move(temporary, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path done() {
+        return directory.resolve(".done").resolve(FILE_NAME);
+    }
+
+    private Path failed() {
+        return directory.resolve(".failed").resolve(FILE_NAME);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within " + WAIT_MS + " ms");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package co.com.fduenasc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the typed serialization path and measures what it allocates per message compared with
+ * the map + ObjectMapper path it replaces; the figures are printed with the test output.
+ */
+class CharacterSerializerTest {
+
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int MEASURED_ROUNDS = 20_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private PayloadCodec payloadCodec;
+
+    @BeforeEach
+    void createCodec() {
+        payloadCodec = new PayloadCodec();
+        payloadCodec.format = "json";
+        payloadCodec.compression = "none";
+        payloadCodec.compressionThreshold = 1024;
+        payloadCodec.init();
+    }
+
+    @Test
+    void writesTheSameJsonAsTheMapPath() throws Exception {
+        CharacterSerializer serializer = serializer(0);
+        Map<String, Object>[] maps = GameOfThronesRouter.createGameOfThronesCharacters();
+
+        for (int i = 0; i < maps.length; i++) {
+            assertEquals(objectMapper.readTree(objectMapper.writeValueAsBytes(maps[i])),
+                    objectMapper.readTree(serializer.serialize(GameOfThronesRouter.CHARACTERS.get(i))));
+        }
+    }
+
+    @Test
+    void servesUnchangedCharactersFromTheCache() throws Exception {
+        CharacterSerializer serializer = serializer(1024);
+        GameOfThronesCharacter character = GameOfThronesRouter.CHARACTERS.get(0);
+
+        byte[] first = serializer.serialize(character);
+
+        assertSame(first, serializer.serialize(character));
+        // Equal records share the payload, whatever instance is published
+        assertSame(first, serializer.serialize(new GameOfThronesCharacter(character.name(), character.house(),
+                character.title(), character.description(), character.status())));
+    }
+
+    @Test
+    void stopsCachingOnceTheCacheIsFull() throws Exception {
+        CharacterSerializer serializer = serializer(1);
+        GameOfThronesCharacter cached = GameOfThronesRouter.CHARACTERS.get(0);
+        GameOfThronesCharacter uncached = GameOfThronesRouter.CHARACTERS.get(1);
+
+        serializer.serialize(cached);
+
+        assertSame(serializer.serialize(cached), serializer.serialize(cached));
+        assertNotSame(serializer.serialize(uncached), serializer.serialize(uncached));
+    }
+
+    @Test
+    void setsTheCompressionHeaderOnlyOnCompressedPayloads() throws Exception {
+        payloadCodec.compression = "lz4";
+        payloadCodec.compressionThreshold = 0;
+        payloadCodec.init();
+        Exchange compressed = process(serializer(0), GameOfThronesRouter.CHARACTERS.get(0));
+
+        assertEquals("lz4", compressed.getIn().getHeader(PayloadCodec.COMPRESSION_HEADER));
+        assertEquals("application/json", compressed.getIn().getHeader(Exchange.CONTENT_TYPE));
+
+        // Below the threshold the payload is sent as is
+        payloadCodec.compressionThreshold = 1024;
+        Exchange uncompressed = process(serializer(0), GameOfThronesRouter.CHARACTERS.get(0));
+
+        assertNull(uncompressed.getIn().getHeader(PayloadCodec.COMPRESSION_HEADER));
+        assertEquals("application/json", uncompressed.getIn().getHeader(Exchange.CONTENT_TYPE));
+    }
+
+    @Test
+    void allocatesLessPerMessageThanTheMapPath() throws Exception {
+        CharacterSerializer uncached = serializer(0);
+        CharacterSerializer cached = serializer(1024);
+
+        long mapBytes = bytesPerMessage(() -> {
+            for (Map<String, Object> character : GameOfThronesRouter.createGameOfThronesCharacters()) {
+                objectMapper.writeValueAsBytes(character);
+            }
+        });
+        long typedBytes = bytesPerMessage(() -> {
+            for (GameOfThronesCharacter character : GameOfThronesRouter.CHARACTERS) {
+                uncached.serialize(character);
+            }
+        });
+        long cachedBytes = bytesPerMessage(() -> {
+            for (GameOfThronesCharacter character : GameOfThronesRouter.CHARACTERS) {
+                cached.serialize(character);
+            }
+        });
+        System.out.printf("Bytes allocated per message: map + ObjectMapper %d, typed writer %d, typed cached %d%n",
+                mapBytes, typedBytes, cachedBytes);
+
+        assertTrue(typedBytes < mapBytes, "typed writer allocates " + typedBytes + " bytes, map path " + mapBytes);
+        assertTrue(cachedBytes < typedBytes, "cached payloads allocate " + cachedBytes + " bytes, typed writer " + typedBytes);
+    }
+
+    private CharacterSerializer serializer(int cacheSize) {
+        CharacterSerializer serializer = new CharacterSerializer();
+        serializer.cacheSize = cacheSize;
+        serializer.payloadCodec = payloadCodec;
+        serializer.init();
+        return serializer;
+    }
+
+    private static Exchange process(CharacterSerializer serializer, GameOfThronesCharacter character) throws Exception {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(character);
+        serializer.process(exchange);
+        return exchange;
+    }
+
+    // Bytes allocated by the current thread per serialized character, once the code is warmed up
+    private static long bytesPerMessage(Round round) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            round.run();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        return allocated / ((long) MEASURED_ROUNDS * GameOfThronesRouter.CHARACTERS.size());
+    }
+
+    private interface Round {
+        void run() throws Exception;
+    }
+}
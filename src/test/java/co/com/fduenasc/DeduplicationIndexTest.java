@@ -0,0 +1,150 @@
+package co.com.fduenasc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeduplicationIndexTest {
+
+    // With 4 keys per generation the tables have 8 slots, so hashes 8 apart share a home slot
+    private static final int MAX_KEYS = 4;
+    private static final long DAY = 86_400_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rejectsKeysAlreadyAdded() throws Exception {
+        try (DeduplicationIndex index = new DeduplicationIndex(MAX_KEYS, DAY, null)) {
+            assertTrue(index.add(DeduplicationIndex.hash("Jon Snow|Stark")));
+            assertFalse(index.add(DeduplicationIndex.hash("Jon Snow|Stark")));
+            assertTrue(index.add(DeduplicationIndex.hash("Arya Stark|Stark")));
+            assertEquals(2, index.size());
+        }
+    }
+
+    @Test
+    void probesPastCollidingKeys() throws Exception {
+        try (DeduplicationIndex index = new DeduplicationIndex(MAX_KEYS, DAY, null)) {
+            assertTrue(index.add(1));
+            assertTrue(index.add(9));
+            assertTrue(index.add(17));
+
+            assertTrue(index.contains(9));
+            assertTrue(index.contains(17));
+            assertFalse(index.contains(25));
+            assertFalse(index.add(17));
+        }
+    }
+
+    @Test
+    void shiftsBackTheKeysThatFollowARemovedOne() throws Exception {
+        try (DeduplicationIndex index = new DeduplicationIndex(MAX_KEYS, DAY, null)) {
+            index.add(1);
+            index.add(9);
+            index.add(17);
+
+            assertTrue(index.remove(9));
+
+            // 17 would be lost behind an empty slot without the shift
+            assertTrue(index.contains(1));
+            assertFalse(index.contains(9));
+            assertTrue(index.contains(17));
+            assertEquals(2, index.size());
+            assertTrue(index.add(9));
+        }
+    }
+
+    @Test
+    void shiftsBackAcrossTheEndOfTheTable() throws Exception {
+        try (DeduplicationIndex index = new DeduplicationIndex(MAX_KEYS, DAY, null)) {
+            // Home slot 7, so 15 wraps to slot 0, and 2 takes slot 2 after 23 fills slot 1
+            index.add(7);
+            index.add(15);
+            index.add(23);
+            index.add(2);
+
+            assertTrue(index.remove(7));
+
+            assertTrue(index.contains(15));
+            assertTrue(index.contains(23));
+            assertTrue(index.contains(2));
+            assertTrue(index.remove(15));
+            assertTrue(index.contains(23));
+            assertTrue(index.contains(2));
+        }
+    }
+
+    @Test
+    void treatsTheEmptyMarkerAsAKey() throws Exception {
+        try (DeduplicationIndex index = new DeduplicationIndex(MAX_KEYS, DAY, null)) {
+            assertTrue(index.add(0));
+            assertTrue(index.contains(0));
+            assertTrue(index.remove(0));
+            assertFalse(index.contains(0));
+        }
+    }
+
+    @Test
+    void rotatesGenerationsWhenOneIsFull() throws Exception {
+        try (DeduplicationIndex index = new DeduplicationIndex(2, DAY, null)) {
+            index.add(101);
+            index.add(102);
+            // Starts the second generation, the first one is still checked
+            index.add(103);
+            assertTrue(index.contains(101));
+            assertFalse(index.add(102));
+            index.add(104);
+
+            // Recycles the first generation
+            index.add(105);
+
+            assertFalse(index.contains(101));
+            assertFalse(index.contains(102));
+            assertTrue(index.contains(103));
+            assertTrue(index.contains(104));
+            assertTrue(index.contains(105));
+            assertEquals(3, index.size());
+        }
+    }
+
+    @Test
+    void rotatesGenerationsOnceTheWindowHasPassed() throws Exception {
+        // Every add finds the current generation older than the window
+        try (DeduplicationIndex index = new DeduplicationIndex(MAX_KEYS, 0, null)) {
+            index.add(101);
+            index.add(102);
+            index.add(103);
+
+            assertFalse(index.contains(101));
+            assertTrue(index.contains(102));
+            assertTrue(index.contains(103));
+        }
+    }
+
+    @Test
+    void keepsTheKeysInTheSnapshotAcrossRestarts() throws Exception {
+        Path snapshot = directory.resolve("dedup.index");
+        try (DeduplicationIndex index = new DeduplicationIndex(MAX_KEYS, DAY, snapshot)) {
+            index.add(101);
+            index.add(102);
+        }
+
+        try (DeduplicationIndex index = new DeduplicationIndex(MAX_KEYS, DAY, snapshot)) {
+            assertEquals(2, index.size());
+            assertTrue(index.contains(101));
+            assertFalse(index.add(102));
+        }
+
+        // A snapshot written with another table size is discarded
+        try (DeduplicationIndex index = new DeduplicationIndex(MAX_KEYS * 4, DAY, snapshot)) {
+            assertEquals(0, index.size());
+            assertFalse(index.contains(101));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HouseAggregatorTest {
+
+    private static final long WINDOW_MS = 60_000;
+    private static final long SLIDE_MS = 10_000;
+
+    private HouseAggregator aggregator;
+    // Start of the next whole window, so every test starts at a tumbling window boundary
+    private long start;
+
+    @BeforeEach
+    void createAggregator() {
+        aggregator = aggregator(4);
+        start = (System.currentTimeMillis() / WINDOW_MS + 1) * WINDOW_MS;
+    }
+
+    @Test
+    void summarizesATumblingWindowOnceItEnds() {
+        aggregator.record(character("Eddard Stark", "Stark", "Lord of Winterfell", "Deceased"), start + 1_000);
+        aggregator.record(character("Arya Stark", "Stark", null, "Alive"), start + 25_000);
+        aggregator.record(character("Cersei Lannister", "Lannister", "Queen", "Alive"), start + 59_000);
+
+        assertTrue(tumbling(aggregator.summarize(start + WINDOW_MS - 1)).isEmpty());
+        List<HouseAggregator.WindowSummary> summaries = tumbling(aggregator.summarize(start + WINDOW_MS));
+
+        assertEquals(1, summaries.size());
+        HouseAggregator.WindowSummary summary = summaries.get(0);
+        assertEquals(start, summary.start());
+        assertEquals(start + WINDOW_MS, summary.end());
+        assertEquals(List.of(
+                new HouseAggregator.HouseSummary("Stark", 1, 1, 0, "Lord of Winterfell"),
+                new HouseAggregator.HouseSummary("Lannister", 1, 0, 0, "Queen")), summary.houses());
+    }
+
+    @Test
+    void startsTheNextTumblingWindowFromZero() {
+        aggregator.record(character("Eddard Stark", "Stark", "Lord of Winterfell", "Deceased"), start + 1_000);
+        aggregator.summarize(start + WINDOW_MS);
+
+        aggregator.record(character("Arya Stark", "Stark", null, "Alive"), start + WINDOW_MS + 5_000);
+        List<HouseAggregator.WindowSummary> summaries = tumbling(aggregator.summarize(start + 2 * WINDOW_MS));
+
+        assertEquals(1, summaries.size());
+        // Neither the count nor the title of the previous window carries over
+        assertEquals(List.of(new HouseAggregator.HouseSummary("Stark", 1, 0, 0, null)), summaries.get(0).houses());
+    }
+
+    @Test
+    void reportsTheLatestTitleOfTheWindow() {
+        aggregator.record(character("Robert Baratheon", "Baratheon", "King", "Deceased"), start + 1_000);
+        aggregator.record(character("Stannis Baratheon", "Baratheon", "Lord of Dragonstone", "Deceased"), start + 30_000);
+        aggregator.record(character("Gendry", "Baratheon", null, "Alive"), start + 50_000);
+
+        List<HouseAggregator.WindowSummary> summaries = tumbling(aggregator.summarize(start + WINDOW_MS));
+
+        assertEquals("Lord of Dragonstone", summaries.get(0).houses().get(0).latestTitle());
+    }
+
+    @Test
+    void slidesTheWindowOneBucketAtATime() {
+        aggregator.record(character("Eddard Stark", "Stark", "Lord of Winterfell", "Deceased"), start + 1_000);
+        aggregator.record(character("Arya Stark", "Stark", null, "Alive"), start + 15_000);
+        aggregator.summarize(start + WINDOW_MS);
+
+        // The window [start + 10 s, start + 70 s) no longer holds the first bucket
+        List<HouseAggregator.WindowSummary> summaries = sliding(aggregator.summarize(start + WINDOW_MS + SLIDE_MS));
+
+        assertEquals(1, summaries.size());
+        assertEquals(start + SLIDE_MS, summaries.get(0).start());
+        assertEquals(List.of(new HouseAggregator.HouseSummary("Stark", 1, 0, 0, null)), summaries.get(0).houses());
+
+        // Nothing is left once the second bucket slides out as well
+        assertTrue(sliding(aggregator.summarize(start + WINDOW_MS + 2 * SLIDE_MS)).isEmpty());
+    }
+
+    @Test
+    void reusesARingSlotWithoutKeepingItsOldCounts() {
+        aggregator.record(character("Eddard Stark", "Stark", "Lord of Winterfell", "Deceased"), start + 1_000);
+        aggregator.summarize(start + WINDOW_MS);
+
+        // The ring has one window of buckets plus two, so this bucket lands in the slot of the first one
+        long reused = start + (WINDOW_MS / SLIDE_MS + 2) * SLIDE_MS;
+        aggregator.record(character("Arya Stark", "Stark", null, "Alive"), reused + 1_000);
+        List<HouseAggregator.WindowSummary> summaries = sliding(aggregator.summarize(reused + SLIDE_MS));
+
+        HouseAggregator.WindowSummary last = summaries.get(summaries.size() - 1);
+        assertEquals(reused + SLIDE_MS, last.end());
+        assertEquals(List.of(new HouseAggregator.HouseSummary("Stark", 1, 0, 0, null)), last.houses());
+    }
+
+    @Test
+    void countsHousesBeyondTheLimitAsOther() {
+        aggregator = aggregator(3);
+        aggregator.record(character("Eddard Stark", "Stark", null, "Deceased"), start + 1_000);
+        aggregator.record(character("Cersei Lannister", "Lannister", null, "Alive"), start + 1_000);
+        aggregator.record(character("Daenerys Targaryen", "Targaryen", null, "Alive"), start + 1_000);
+        aggregator.record(character("Theon Greyjoy", "Greyjoy", null, "Unknown"), start + 1_000);
+
+        List<HouseAggregator.WindowSummary> summaries = tumbling(aggregator.summarize(start + WINDOW_MS));
+
+        assertEquals(List.of(
+                new HouseAggregator.HouseSummary("Stark", 0, 1, 0, null),
+                new HouseAggregator.HouseSummary("Lannister", 1, 0, 0, null),
+                new HouseAggregator.HouseSummary("Other", 1, 0, 1, null)), summaries.get(0).houses());
+    }
+
+    @Test
+    void skipsEmptyWindows() {
+        assertTrue(aggregator.summarize(start + WINDOW_MS).isEmpty());
+    }
+
+    private static HouseAggregator aggregator(int maxHouses) {
+        RouteMetrics routeMetrics = new RouteMetrics();
+        routeMetrics.registry = new SimpleMeterRegistry();
+        HouseAggregator aggregator = new HouseAggregator();
+        aggregator.windowMs = WINDOW_MS;
+        aggregator.slideMs = SLIDE_MS;
+        aggregator.maxHouses = maxHouses;
+        aggregator.windows = List.of(HouseAggregator.WINDOW_TUMBLING, HouseAggregator.WINDOW_SLIDING);
+        aggregator.routeMetrics = routeMetrics;
+        aggregator.init();
+        return aggregator;
+    }
+
+    private static GameOfThronesCharacter character(String name, String house, String title, String status) {
+        return new GameOfThronesCharacter(name, house, title, "", status);
+    }
+
+    private static List<HouseAggregator.WindowSummary> tumbling(List<HouseAggregator.WindowSummary> summaries) {
+        return summaries.stream().filter(summary -> HouseAggregator.WINDOW_TUMBLING.equals(summary.window())).toList();
+    }
+
+    private static List<HouseAggregator.WindowSummary> sliding(List<HouseAggregator.WindowSummary> summaries) {
+        return summaries.stream().filter(summary -> HouseAggregator.WINDOW_SLIDING.equals(summary.window())).toList();
+    }
+}
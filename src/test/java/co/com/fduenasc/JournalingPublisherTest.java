@@ -0,0 +1,148 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalingPublisherTest {
+
+    private static final long WAIT_MS = 5_000;
+
+    @TempDir
+    Path directory;
+
+    private final DefaultCamelContext context = new DefaultCamelContext();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    // Bodies the broker accepted, in the order they were sent
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private volatile boolean brokerDown;
+    private JournalingPublisher publisher;
+
+    @AfterEach
+    void stopPublisher() throws Exception {
+        if (publisher != null) {
+            publisher.shutdown();
+        }
+    }
+
+    @Test
+    void spoolsMessagesDuringAnOutageAndForwardsThemInOrder() throws Exception {
+        brokerDown = true;
+        publisher = publisher();
+
+        publisher.process(exchange("Jon Snow"));
+        publisher.process(exchange("Arya Stark"));
+        publisher.process(exchange("Sansa Stark"));
+
+        assertTrue(sent.isEmpty());
+        assertEquals(3, registry.get("got.journal.backlog.messages").gauge().value());
+        assertTrue(registry.get("got.journal.backlog.bytes").gauge().value() > 0);
+        assertEquals(3, registry.get("got.journal.appended").counter().count());
+
+        brokerDown = false;
+        await(() -> registry.get("got.journal.backlog.messages").gauge().value() == 0);
+
+        assertEquals(List.of("Jon Snow", "Arya Stark", "Sansa Stark"), sent);
+        assertEquals(0, registry.get("got.journal.backlog.bytes").gauge().value());
+        assertEquals(3, registry.get("got.journal.forwarded").counter().count());
+
+        // Messages published after the outage still go out behind the journaled ones
+        publisher.process(exchange("Bran Stark"));
+        await(() -> sent.size() == 4);
+        assertEquals(List.of("Jon Snow", "Arya Stark", "Sansa Stark", "Bran Stark"), sent);
+    }
+
+    @Test
+    void forwardsTheBacklogOfAPreviousRunOnStartup() throws Exception {
+        brokerDown = true;
+        publisher = publisher();
+        publisher.process(exchange("Jon Snow"));
+        publisher.process(exchange("Arya Stark"));
+        publisher.shutdown();
+
+        // No new message is needed to get the journaled ones through
+        brokerDown = false;
+        publisher = publisher();
+        await(() -> publisher.backlog() == 0);
+
+        assertEquals(List.of("Jon Snow", "Arya Stark"), sent);
+    }
+
+    private JournalingPublisher publisher() throws Exception {
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory();
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        RouteMetrics routeMetrics = new RouteMetrics();
+        routeMetrics.registry = registry;
+        PayloadCodec payloadCodec = new PayloadCodec();
+        payloadCodec.format = "json";
+        payloadCodec.compression = "none";
+        payloadCodec.init();
+
+        JournalingPublisher journalingPublisher = new JournalingPublisher() {
+            @Override
+            RabbitTemplate createTemplate() {
+                return new RabbitTemplate(connectionFactory) {
+                    @Override
+                    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+                        if (brokerDown) {
+                            throw new AmqpException("Connection refused");
+                        }
+                        sent.add(new String(message.getBody(), StandardCharsets.UTF_8));
+                        correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+                    }
+                };
+            }
+        };
+        journalingPublisher.publisherMode = "journal";
+        journalingPublisher.exchangeName = "got-exchange";
+        journalingPublisher.routingKey = "character";
+        journalingPublisher.journalMode = "fallback";
+        journalingPublisher.directory = directory.toString();
+        journalingPublisher.segmentSize = 1024;
+        journalingPublisher.maxSegments = 4;
+        journalingPublisher.fsync = "interval";
+        journalingPublisher.fsyncIntervalMs = 10;
+        // Several forward batches, so their order is checked too
+        journalingPublisher.forwardBatchSize = 2;
+        journalingPublisher.retryIntervalMs = 10;
+        journalingPublisher.confirmTimeoutMs = 1_000;
+        journalingPublisher.connectionFactory = connectionFactory;
+        journalingPublisher.routeMetrics = routeMetrics;
+        journalingPublisher.payloadCodec = payloadCodec;
+        journalingPublisher.init();
+        return journalingPublisher;
+    }
+
+    private Exchange exchange(String body) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(body.getBytes(StandardCharsets.UTF_8));
+        return exchange;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within " + WAIT_MS + " ms");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package co.com.fduenasc;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeywordRouterTest {
+
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    @Test
+    void routesToTheFirstDeclaredRuleWhateverItsPosition() throws Exception {
+        KeywordRouter router = KeywordRouter.compile(List.of("error=direct:errors", "warn=direct:warnings"), "direct:other");
+
+        Exchange exchange = exchange("warn: disk almost full, error: disk full");
+        router.process(exchange);
+
+        assertEquals("direct:errors", exchange.getIn().getHeader(KeywordRouter.DESTINATION_HEADER));
+        assertEquals("error", exchange.getIn().getHeader(KeywordRouter.KEYWORD_HEADER));
+    }
+
+    @Test
+    void fallsBackToTheDefaultDestination() throws Exception {
+        KeywordRouter router = KeywordRouter.compile(List.of("error=direct:errors"), "direct:other");
+
+        Exchange exchange = exchange("all good");
+        router.process(exchange);
+
+        assertEquals("direct:other", exchange.getIn().getHeader(KeywordRouter.DESTINATION_HEADER));
+        assertEquals(KeywordRouter.DEFAULT_KEYWORD, exchange.getIn().getHeader(KeywordRouter.KEYWORD_HEADER));
+    }
+
+    @Test
+    void followsFailureLinksAfterAPartialMatch() {
+        KeywordRouter router = KeywordRouter.compile(List.of("she=a", "he=b"), "default");
+
+        // "sh" is a dead end for "she", the automaton must fall back to "h" and go on to find "he"
+        assertEquals(1, router.match("shhe"));
+        assertEquals(1, router.match("the"));
+        assertEquals(0, router.match("ushers"));
+        assertEquals(NO_MATCH, router.match("sh"));
+    }
+
+    @Test
+    void findsKeywordsThatAreSuffixesOfOthers() {
+        KeywordRouter router = KeywordRouter.compile(List.of("hers=a", "his=b", "he=c"), "default");
+
+        assertEquals(0, router.match("ahishers"));
+        assertEquals(1, router.match("ahis"));
+        assertEquals(2, router.match("ahe"));
+        assertEquals(2, router.match("her"));
+    }
+
+    @Test
+    void matchesMultiByteKeywords() {
+        KeywordRouter router = KeywordRouter.compile(List.of("caf\u00e9=a", "\uD83D\uDC09=b", "\u00f1=c"), "default");
+
+        assertEquals(0, router.match("un caf\u00e9 noir"));
+        assertEquals(0, router.match("un caf\u00e9 noir".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, router.match("here be \uD83D\uDC09"));
+        assertEquals(2, router.match("Espa\u00f1a"));
+        assertEquals(NO_MATCH, router.match("cafe"));
+    }
+
+    @Test
+    void encodesUnpairedSurrogatesAsQuestionMarks() {
+        KeywordRouter router = KeywordRouter.compile(List.of("a?b=a"), "default");
+
+        assertEquals(0, router.match("a\uD83Db"));
+        assertEquals(0, router.match("a?b"));
+    }
+
+    @Test
+    void matchesTextAndItsUtf8BytesTheSame() {
+        KeywordRouter router = KeywordRouter.compile(List.of("ab=a", "b\u00e9=b", "\u00e9\u4e2d=c", "\u4e2d\uD83D\uDC09=d", "zz=e"), "default");
+        char[] alphabet = {'a', 'b', 'z', '\u00e9', '\u4e2d', '\uD83D', '\uDC09'};
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            String body = text.toString();
+            assertEquals(router.match(body.getBytes(StandardCharsets.UTF_8)), router.match(body), body);
+        }
+    }
+
+    @Test
+    void rejectsMalformedRules() {
+        assertThrows(IllegalArgumentException.class, () -> KeywordRouter.compile(List.of("error"), "default"));
+        assertThrows(IllegalArgumentException.class, () -> KeywordRouter.compile(List.of("=direct:errors"), "default"));
+        assertThrows(IllegalArgumentException.class, () -> KeywordRouter.compile(List.of("error="), "default"));
+    }
+
+    private static Exchange exchange(String body) {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(body);
+        return exchange;
+    }
+}
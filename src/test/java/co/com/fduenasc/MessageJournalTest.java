@@ -0,0 +1,157 @@
+package co.com.fduenasc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageJournalTest {
+
+    // Record header: payload length plus one and CRC32C
+    private static final int HEADER_SIZE = 8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void continuesFromTheCheckpointAfterARestart() throws Exception {
+        try (MessageJournal journal = open(1024, 4)) {
+            journal.append(bytes("first"));
+            journal.append(bytes("second"));
+            journal.append(bytes("third"));
+            MessageJournal.Batch batch = journal.poll(2, 0, TimeUnit.MILLISECONDS);
+            assertEquals(List.of("first", "second"), strings(batch));
+            journal.commit(batch);
+        }
+
+        try (MessageJournal journal = open(1024, 4)) {
+            assertEquals(1, journal.backlogMessages());
+            assertEquals(List.of("third"), strings(journal.poll(10, 0, TimeUnit.MILLISECONDS)));
+        }
+    }
+
+    @Test
+    void dropsARecordTornByACrash() throws Exception {
+        try (MessageJournal journal = open(1024, 4)) {
+            journal.append(bytes("first"));
+            journal.append(bytes("second"));
+        }
+        // A record whose length was written but whose payload and checksum were not
+        int end = 2 * HEADER_SIZE + "first".length() + "second".length();
+        try (FileChannel segment = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.allocate(HEADER_SIZE).putInt(7).putInt(12345).flip(), end);
+        }
+
+        try (MessageJournal journal = open(1024, 4)) {
+            assertEquals(2, journal.backlogMessages());
+            assertEquals(2L * HEADER_SIZE + "first".length() + "second".length(), journal.backlogBytes());
+            // The torn record is overwritten by the next append
+            assertTrue(journal.append(bytes("third")));
+            assertEquals(List.of("first", "second", "third"), strings(journal.poll(10, 0, TimeUnit.MILLISECONDS)));
+        }
+    }
+
+    @Test
+    void rollsOverToNewSegmentsAndDeletesTheReadOnes() throws Exception {
+        // Room for two 16 byte records per segment
+        try (MessageJournal journal = open(2 * (HEADER_SIZE + 8), 8)) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(journal.append(bytes("message" + i)));
+            }
+            assertEquals(3, journal.segmentCount());
+
+            MessageJournal.Batch batch = journal.poll(3, 0, TimeUnit.MILLISECONDS);
+            assertEquals(List.of("message0", "message1", "message2"), strings(batch));
+            journal.commit(batch);
+            assertEquals(2, journal.segmentCount());
+            assertEquals(2, segments().size());
+
+            batch = journal.poll(10, 0, TimeUnit.MILLISECONDS);
+            assertEquals(List.of("message3", "message4"), strings(batch));
+            journal.commit(batch);
+            assertEquals(0, journal.backlogMessages());
+            assertEquals(0, journal.backlogBytes());
+        }
+    }
+
+    @Test
+    void refusesMessagesWhenFullUntilSomeAreCommitted() throws Exception {
+        try (MessageJournal journal = open(2 * (HEADER_SIZE + 8), 2)) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(journal.append(bytes("message" + i)));
+            }
+            assertFalse(journal.append(bytes("message4")));
+            assertEquals(4, journal.backlogMessages());
+
+            // Committing the first segment frees room for a new one
+            MessageJournal.Batch batch = journal.poll(2, 0, TimeUnit.MILLISECONDS);
+            journal.commit(batch);
+            assertTrue(journal.append(bytes("message4")));
+            assertEquals(List.of("message2", "message3", "message4"), strings(journal.poll(10, 0, TimeUnit.MILLISECONDS)));
+        }
+    }
+
+    @Test
+    void readsBackEmptyMessages() throws Exception {
+        try (MessageJournal journal = open(1024, 2)) {
+            journal.append(new byte[0]);
+            journal.append(bytes("first"));
+            journal.append(new byte[0]);
+        }
+
+        try (MessageJournal journal = open(1024, 2)) {
+            assertEquals(3, journal.backlogMessages());
+            MessageJournal.Batch batch = journal.poll(10, 0, TimeUnit.MILLISECONDS);
+            assertEquals(List.of("", "first", ""), strings(batch));
+            journal.commit(batch);
+            assertEquals(0, journal.backlogMessages());
+            assertTrue(journal.poll(10, 0, TimeUnit.MILLISECONDS).messages().isEmpty());
+        }
+    }
+
+    @Test
+    void rejectsMessagesLargerThanASegment() throws Exception {
+        try (MessageJournal journal = open(32, 2)) {
+            assertThrows(IllegalArgumentException.class, () -> journal.append(new byte[32]));
+        }
+    }
+
+    @Test
+    void pollReturnsAnEmptyBatchWhenNothingArrives() throws Exception {
+        try (MessageJournal journal = open(1024, 2)) {
+            assertTrue(journal.poll(10, 10, TimeUnit.MILLISECONDS).messages().isEmpty());
+        }
+    }
+
+    private MessageJournal open(int segmentSize, int maxSegments) throws IOException {
+        return new MessageJournal(directory, segmentSize, maxSegments, MessageJournal.FsyncPolicy.NEVER);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".journal")).sorted().toList();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(MessageJournal.Batch batch) {
+        return batch.messages().stream().map(payload -> new String(payload, StandardCharsets.UTF_8)).toList();
+    }
+}
@@ -0,0 +1,182 @@
+package co.com.fduenasc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RabbitMQBatchPublisherTest {
+
+    private static final long WAIT_MS = 2_000;
+    // Long enough for a message to be sent if the publisher was going to send it
+    private static final long QUIET_MS = 200;
+
+    // Messages handed to the template, in the order they were sent
+    private final BlockingQueue<Sent> sent = new LinkedBlockingQueue<>();
+    private RabbitMQBatchPublisher publisher;
+
+    @AfterEach
+    void stopPublisher() {
+        if (publisher != null) {
+            publisher.shutdown();
+        }
+    }
+
+    @Test
+    void flushesOnceTheBatchIsFull() throws Exception {
+        publisher = publisher(3, 60_000, 0, 60_000);
+
+        publisher.publish(bytes("Jon Snow"));
+        publisher.publish(bytes("Arya Stark"));
+        assertNull(sent.poll(QUIET_MS, TimeUnit.MILLISECONDS));
+
+        publisher.publish(bytes("Sansa Stark"));
+        assertEquals("Jon Snow", next().body());
+        assertEquals("Arya Stark", next().body());
+        assertEquals("Sansa Stark", next().body());
+    }
+
+    @Test
+    void flushesAPartialBatchOnceTheLingerTimeExpires() throws Exception {
+        publisher = publisher(100, 20, 0, 60_000);
+
+        CompletableFuture<Void> result = publisher.publish(bytes("Jon Snow"));
+        Sent message = next();
+
+        assertEquals("Jon Snow", message.body());
+        assertFalse(result.isDone());
+        message.ack();
+        result.get(WAIT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void retriesANackedMessage() throws Exception {
+        publisher = publisher(1, 60_000, 2, 60_000);
+
+        CompletableFuture<Void> result = publisher.publish(bytes("Jon Snow"));
+        next().nack("queue full");
+        Sent retry = next();
+
+        assertEquals("Jon Snow", retry.body());
+        assertFalse(result.isDone());
+        retry.ack();
+        result.get(WAIT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void retriesUnconfirmedMessagesUntilTheRetriesRunOut() throws Exception {
+        publisher = publisher(1, 60_000, 2, 50);
+
+        CompletableFuture<Void> result = publisher.publish(bytes("Jon Snow"));
+
+        // The first attempt and two retries time out without a confirm
+        next();
+        next();
+        next();
+        ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(AmqpException.class, error.getCause());
+        assertTrue(error.getCause().getMessage().contains("no confirm"));
+        assertNull(sent.poll(QUIET_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void failsPendingMessagesOnShutdown() throws Exception {
+        publisher = publisher(100, 60_000, 3, 60_000);
+        CompletableFuture<Void> buffered = publisher.publish(bytes("Jon Snow"));
+
+        // Shutdown flushes the buffered message, and a nack no longer schedules a retry
+        CompletableFuture.runAsync(() -> {
+            try {
+                next().nack("channel closed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        publisher.shutdown();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> buffered.get(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(AmqpException.class, error.getCause());
+        CompletableFuture<Void> late = publisher.publish(bytes("Arya Stark"));
+        assertTrue(late.isCompletedExceptionally());
+        assertNull(sent.poll(QUIET_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private RabbitMQBatchPublisher publisher(int batchSize, long lingerMs, int maxRetries, long confirmTimeoutMs) {
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory();
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        RouteMetrics routeMetrics = new RouteMetrics();
+        routeMetrics.registry = new SimpleMeterRegistry();
+        PayloadCodec payloadCodec = new PayloadCodec();
+        payloadCodec.format = "json";
+        payloadCodec.compression = "none";
+        payloadCodec.init();
+
+        RabbitMQBatchPublisher batchPublisher = new RabbitMQBatchPublisher() {
+            @Override
+            RabbitTemplate createTemplate() {
+                return new RabbitTemplate(connectionFactory) {
+                    @Override
+                    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+                        sent.add(new Sent(message, correlationData));
+                    }
+                };
+            }
+        };
+        batchPublisher.exchangeName = "got-exchange";
+        batchPublisher.routingKey = "character";
+        batchPublisher.batchSize = batchSize;
+        batchPublisher.lingerMs = lingerMs;
+        batchPublisher.maxRetries = maxRetries;
+        batchPublisher.retryBackoffMs = 1;
+        batchPublisher.confirmTimeoutMs = confirmTimeoutMs;
+        batchPublisher.connectionFactory = connectionFactory;
+        batchPublisher.routeMetrics = routeMetrics;
+        batchPublisher.payloadCodec = payloadCodec;
+        batchPublisher.init();
+        return batchPublisher;
+    }
+
+    private Sent next() throws InterruptedException {
+        Sent message = sent.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(message, "nothing was sent");
+        return message;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private record Sent(Message message, CorrelationData correlation) {
+
+        String body() {
+            return new String(message.getBody(), StandardCharsets.UTF_8);
+        }
+
+        void ack() {
+            correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+        }
+
+        void nack(String reason) {
+            correlation.getFuture().complete(new CorrelationData.Confirm(false, reason));
+        }
+    }
+}
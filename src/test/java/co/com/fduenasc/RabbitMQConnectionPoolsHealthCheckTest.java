@@ -0,0 +1,98 @@
+package co.com.fduenasc;
+
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RabbitMQConnectionPoolsHealthCheckTest {
+
+    private RabbitMQConfiguration configuration;
+    private RabbitMQConnectionPoolsHealthCheck healthCheck;
+
+    @BeforeEach
+    void createPools() {
+        configuration = new RabbitMQConfiguration();
+        configuration.host = "localhost";
+        configuration.port = 5672;
+        configuration.username = "guest";
+        configuration.password = "guest";
+        configuration.publisherConnections = 2;
+        configuration.publisherChannelCacheSize = 25;
+        configuration.consumerChannelCacheSize = 10;
+        // Creates the publisher-0, publisher-1 and consumer pools, none of them connects yet
+        configuration.producePublisherConnectionFactory();
+        configuration.produceConsumerConnectionFactory();
+
+        healthCheck = new RabbitMQConnectionPoolsHealthCheck();
+        healthCheck.configuration = configuration;
+    }
+
+    @Test
+    void staysUpWhilePoolsHaveNotConnectedYet() {
+        HealthCheckResponse response = healthCheck.call();
+
+        assertEquals(HealthCheckResponse.Status.UP, response.getStatus());
+        assertEquals("not connected yet", data(response).get("publisher-0.open"));
+        assertEquals("not connected yet", data(response).get("publisher-1.open"));
+        assertEquals("not connected yet", data(response).get("consumer.open"));
+    }
+
+    @Test
+    void reportsOpenConnections() {
+        connected("publisher-0");
+        connected("publisher-1");
+        connected("consumer");
+
+        HealthCheckResponse response = healthCheck.call();
+
+        assertEquals(HealthCheckResponse.Status.UP, response.getStatus());
+        assertEquals(true, data(response).get("publisher-1.open"));
+        assertEquals(true, data(response).get("consumer.open"));
+    }
+
+    @Test
+    void goesDownWhenAConnectionClosesAndUpWhenItReopens() {
+        connected("publisher-0");
+        connected("publisher-1");
+        configuration.new ConnectionStateListener("publisher-1").onClose(null);
+
+        HealthCheckResponse response = healthCheck.call();
+        assertEquals(HealthCheckResponse.Status.DOWN, response.getStatus());
+        assertEquals(false, data(response).get("publisher-1.open"));
+        assertEquals(true, data(response).get("publisher-0.open"));
+
+        connected("publisher-1");
+        assertEquals(HealthCheckResponse.Status.UP, healthCheck.call().getStatus());
+    }
+
+    @Test
+    void goesDownWhenTheBrokerShutsAConnectionDown() {
+        connected("consumer");
+        configuration.new ConnectionStateListener("consumer").onShutDown(null);
+
+        HealthCheckResponse response = healthCheck.call();
+
+        assertEquals(HealthCheckResponse.Status.DOWN, response.getStatus());
+        assertEquals(false, data(response).get("consumer.open"));
+    }
+
+    @Test
+    void reportsTheChannelCacheOfEveryPool() {
+        Map<String, Object> data = data(healthCheck.call());
+
+        assertEquals("25", data.get("publisher-0.channelCacheSize"));
+        assertEquals("10", data.get("consumer.channelCacheSize"));
+    }
+
+    private void connected(String pool) {
+        configuration.new ConnectionStateListener(pool).onCreate(null);
+    }
+
+    private static Map<String, Object> data(HealthCheckResponse response) {
+        return response.getData().orElseThrow();
+    }
+}
@@ -0,0 +1,91 @@
+package co.com.fduenasc;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedConnectionFactoryTest {
+
+    // Index of the shard that took each call, in call order
+    private final List<Integer> picked = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void picksTheShardsInRoundRobin() {
+        ConnectionFactory factory = new ShardedConnectionFactory(shards(3));
+
+        for (int i = 0; i < 7; i++) {
+            factory.createConnection();
+        }
+
+        assertEquals(List.of(0, 1, 2, 0, 1, 2, 0), picked);
+    }
+
+    @Test
+    void spreadsConcurrentCallsEvenly() throws Exception {
+        ConnectionFactory factory = new ShardedConnectionFactory(shards(3));
+        int threads = 4;
+        int callsPerThread = 300;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < callsPerThread; j++) {
+                    factory.createConnection();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(threads * callsPerThread, picked.size());
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(threads * callsPerThread / 3, Collections.frequency(picked, shard));
+        }
+    }
+
+    @Test
+    void usesTheOnlyShardWhenThereIsOne() {
+        ConnectionFactory factory = new ShardedConnectionFactory(shards(1));
+
+        factory.createConnection();
+        factory.createConnection();
+
+        assertEquals(List.of(0, 0), picked);
+    }
+
+    private List<ConnectionFactory> shards(int count) {
+        List<ConnectionFactory> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            // Records the call instead of opening a connection
+            shards.add(new CachingConnectionFactory() {
+                @Override
+                public Connection createConnection() {
+                    picked.add(index);
+                    return null;
+                }
+            });
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,113 @@
+package co.com.fduenasc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UppercaseInputStreamTest {
+
+    // Two, three and four byte sequences, plus characters that grow when converted
+    private static final String MIXED = "Daenerys \u00F1and\u00FA \u20AC100 \u4E2D\u6587 \uD83D\uDC09 stra\u00DFe \u0131 \uD801\uDC28 end";
+
+    @Test
+    void convertsAsciiChunks() throws IOException {
+        assertEquals("JON SNOW, KING IN THE NORTH", uppercase("Jon Snow, King in the North", 8, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void convertsMultiByteTextSplitAtEveryOffset() throws IOException {
+        String expected = MIXED.toUpperCase(Locale.ROOT);
+        // Chunks of 4 to 12 bytes cut each sequence at every possible position
+        for (int chunkSize = UppercaseInputStream.MIN_CHUNK_SIZE; chunkSize <= 12; chunkSize++) {
+            assertEquals(expected, uppercase(MIXED, chunkSize, Integer.MAX_VALUE), "chunk size " + chunkSize);
+            assertEquals(expected, uppercase(MIXED, chunkSize, 1), "chunk size " + chunkSize + " reading one byte at a time");
+        }
+    }
+
+    @Test
+    void convertsMultiByteTextReadOneByteAtATime() throws IOException {
+        byte[] body = MIXED.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream converted = new ByteArrayOutputStream();
+        try (InputStream stream = new UppercaseInputStream(new ByteArrayInputStream(body), 5)) {
+            for (int b = stream.read(); b >= 0; b = stream.read()) {
+                converted.write(b);
+            }
+        }
+
+        assertEquals(MIXED.toUpperCase(Locale.ROOT), converted.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void raisesChunksSmallerThanTheLongestSequence() throws IOException {
+        String text = "\uD83D\uDC09 \u20AC \u00F1";
+        for (int chunkSize = 1; chunkSize < UppercaseInputStream.MIN_CHUNK_SIZE; chunkSize++) {
+            assertEquals(text.toUpperCase(Locale.ROOT), uppercase(text, chunkSize, 1), "chunk size " + chunkSize);
+        }
+    }
+
+    @Test
+    void replacesATruncatedSequenceAtTheEnd() throws IOException {
+        byte[] euro = "\u20AC".getBytes(StandardCharsets.UTF_8);
+        byte[] body = {'a', 'b', euro[0], euro[1]};
+
+        try (InputStream stream = new UppercaseInputStream(new ByteArrayInputStream(body), 4)) {
+            assertEquals("AB\uFFFD", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void convertsEveryCharacterLikeStringToUpperCase() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (!Character.isSurrogate((char) c)) {
+                text.appendCodePoint(c);
+            }
+        }
+        // Deseret and Osage letters, whose upper and lower cases are both outside the BMP
+        for (int c = 0x10400; c < 0x10500; c++) {
+            text.appendCodePoint(c);
+        }
+        String expected = text.toString().toUpperCase(Locale.ROOT);
+
+        assertEquals(expected, uppercase(text.toString(), 7, Integer.MAX_VALUE));
+        assertEquals(expected, uppercase(text.toString(), 8192, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void convertsAnEmptyBody() throws IOException {
+        assertEquals("", uppercase("", 4, Integer.MAX_VALUE));
+    }
+
+    private static String uppercase(String text, int chunkSize, int maxRead) throws IOException {
+        InputStream source = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        try (InputStream stream = new UppercaseInputStream(new ShortReadInputStream(source, maxRead), chunkSize)) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Returns at most maxRead bytes per read, like a socket handing out small packets.
+     */
+    private static class ShortReadInputStream extends FilterInputStream {
+
+        private final int maxRead;
+
+        ShortReadInputStream(InputStream source, int maxRead) {
+            super(source);
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, maxRead));
+        }
+    }
+}